@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.release;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * Owns the {@link FileSystem} handles used by {@link HDFSClientRelease}, one
+ * per file system authority and user.
+ * <p>
+ * Hadoop's own FileSystem cache is keyed by {@code UserGroupInformation}
+ * instance, and a new one is created for every explicit user, so it never
+ * hits for those calls. The cache is therefore disabled on the shared
+ * {@link Configuration} and handles are kept here instead. Handles which are
+ * idle, and have no open streams or running calls, are closed after a
+ * timeout. When a server is disconnected or deleted its handles are taken out
+ * of the pool. Those not in use are closed right away, the others once their
+ * last stream or call is done, so that running transfers can finish.
+ */
+class FileSystemPool {
+
+	private static final Logger logger = Logger.getLogger(FileSystemPool.class);
+	private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	static final FileSystemPool INSTANCE = new FileSystemPool(HadoopPreferences.getLong(HadoopPreferences.HDFS_CONNECTION_IDLE_TIMEOUT,
+			DEFAULT_IDLE_TIMEOUT_MILLIS));
+
+	private final Configuration config;
+	private final long idleTimeoutMillis;
+	private final ConcurrentHashMap<String, FutureTask<Handle>> handles = new ConcurrentHashMap<String, FutureTask<Handle>>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final ScheduledExecutorService evictor;
+
+	FileSystemPool(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.config = new Configuration();
+		this.config.setBoolean("fs.hdfs.impl.disable.cache", true);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Hadoop FileSystem pool evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the {@link Configuration} shared by all handles
+	 */
+	Configuration getConfiguration() {
+		return config;
+	}
+
+	/**
+	 * Provides the handle for the file system of the URI, as the given user.
+	 *
+	 * @param uri
+	 * @param user
+	 *            <code>null</code> for the current user
+	 * @return {@link Handle}
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	Handle acquire(URI uri, String user) throws IOException, InterruptedException {
+		return acquire(uri, user, false);
+	}
+
+	/**
+	 * Provides the handle like {@link #acquire(URI, String)}, already counted
+	 * as in use, so that it is not closed during a call made with it. Callers
+	 * have to call {@link Handle#streamClosed()} once the call is done.
+	 *
+	 * @param uri
+	 * @param user
+	 *            <code>null</code> for the current user
+	 * @return {@link Handle}
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	Handle acquireInUse(URI uri, String user) throws IOException, InterruptedException {
+		return acquire(uri, user, true);
+	}
+
+	private Handle acquire(final URI uri, final String user, boolean inUse) throws IOException, InterruptedException {
+		final String key = getKey(uri, user);
+		while (true) {
+			FutureTask<Handle> task = handles.get(key);
+			boolean created = false;
+			if (task == null) {
+				FutureTask<Handle> newTask = new FutureTask<Handle>(new Callable<Handle>() {
+					@Override
+					public Handle call() throws Exception {
+						FileSystem fs = user == null ? FileSystem.get(uri, config) : FileSystem.get(uri, config, user);
+						return new Handle(key, fs);
+					}
+				});
+				task = handles.putIfAbsent(key, newTask);
+				if (task == null) {
+					task = newTask;
+					created = true;
+					misses.incrementAndGet();
+					task.run();
+				}
+			}
+			Handle handle;
+			try {
+				handle = task.get();
+			} catch (ExecutionException e) {
+				handles.remove(key, task);
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof InterruptedException)
+					throw (InterruptedException) cause;
+				throw new IOException(cause);
+			}
+			if (handle.use(inUse)) {
+				if (!created)
+					hits.incrementAndGet();
+				return handle;
+			}
+			// Closed after we found it. Try again.
+			handles.remove(key, task);
+		}
+	}
+
+	/**
+	 * Takes all handles of the server's file system out of the pool. Handles
+	 * with open streams are closed when their last stream is closed.
+	 *
+	 * @param serverURI
+	 */
+	void close(URI serverURI) {
+		String prefix = getKey(serverURI, null);
+		List<String> keys = new ArrayList<String>(handles.keySet());
+		for (String key : keys) {
+			if (key.startsWith(prefix))
+				close(key, true);
+		}
+	}
+
+	private void evictIdle() {
+		List<String> keys = new ArrayList<String>(handles.keySet());
+		for (String key : keys)
+			close(key, false);
+	}
+
+	/**
+	 * Stops the evictor and closes the handles which have no open streams.
+	 */
+	void shutdown() {
+		evictor.shutdownNow();
+		List<String> keys = new ArrayList<String>(handles.keySet());
+		for (String key : keys)
+			close(key, true);
+	}
+
+	private void close(String key, boolean disconnect) {
+		FutureTask<Handle> task = handles.get(key);
+		if (task == null || !task.isDone())
+			return;
+		Handle handle;
+		try {
+			handle = task.get();
+		} catch (Exception e) {
+			handles.remove(key, task);
+			return;
+		}
+		if (disconnect)
+			handles.remove(key, task);
+		if (handle.retire(disconnect, idleTimeoutMillis)) {
+			handles.remove(key, task);
+			if (!disconnect)
+				evictions.incrementAndGet();
+			handle.closeFileSystem();
+			if (logger.isDebugEnabled())
+				logger.debug("close(): Closed " + key + ". hits=" + hits + ", misses=" + misses + ", evictions=" + evictions);
+		} else if (disconnect && logger.isDebugEnabled())
+			logger.debug("close(): " + key + " is closed once its streams are closed");
+	}
+
+	private static String getKey(URI uri, String user) {
+		StringBuilder key = new StringBuilder();
+		key.append(uri.getScheme()).append("://");
+		if (uri.getAuthority() != null)
+			key.append(uri.getAuthority());
+		key.append('#');
+		if (user != null)
+			key.append(user);
+		return key.toString();
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	int getSize() {
+		return handles.size();
+	}
+
+	/**
+	 * A pooled {@link FileSystem}, with the number of streams and calls
+	 * currently using it.
+	 */
+	static class Handle {
+		private final String key;
+		private final FileSystem fs;
+		private long lastUsed = System.currentTimeMillis();
+		private int openStreams = 0;
+		private boolean closed = false;
+		private boolean retired = false;
+
+		Handle(String key, FileSystem fs) {
+			this.key = key;
+			this.fs = fs;
+		}
+
+		FileSystem getFileSystem() {
+			return fs;
+		}
+
+		synchronized boolean use(boolean inUse) {
+			if (closed || retired)
+				return false;
+			lastUsed = System.currentTimeMillis();
+			if (inUse)
+				openStreams++;
+			return true;
+		}
+
+		/**
+		 * @param disconnect
+		 *            <code>true</code> to close the handle regardless of when
+		 *            it was last used, as soon as it has no open streams
+		 * @param idleTimeoutMillis
+		 * @return <code>true</code> when the caller has to close the file
+		 *         system now
+		 */
+		synchronized boolean retire(boolean disconnect, long idleTimeoutMillis) {
+			if (closed)
+				return false;
+			if (disconnect)
+				retired = true;
+			if (openStreams > 0 || (!disconnect && System.currentTimeMillis() - lastUsed < idleTimeoutMillis))
+				return false;
+			closed = true;
+			return true;
+		}
+
+		synchronized void streamOpened() {
+			openStreams++;
+			lastUsed = System.currentTimeMillis();
+		}
+
+		void streamClosed() {
+			boolean close;
+			synchronized (this) {
+				openStreams--;
+				lastUsed = System.currentTimeMillis();
+				close = retired && openStreams == 0 && !closed;
+				if (close)
+					closed = true;
+			}
+			if (close)
+				closeFileSystem();
+		}
+
+		void closeFileSystem() {
+			try {
+				fs.close();
+			} catch (IOException e) {
+				logger.debug("Unable to close file system " + key, e);
+			}
+		}
+
+		/**
+		 * Keeps this handle from being evicted while the stream is open.
+		 */
+		FSDataInputStream track(InputStream in) throws IOException {
+			streamOpened();
+			return new FSDataInputStream(in) {
+				private boolean released = false;
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						if (!released) {
+							released = true;
+							streamClosed();
+						}
+					}
+				}
+			};
+		}
+
+		/**
+		 * Keeps this handle from being evicted while the stream is open.
+		 */
+		FSDataOutputStream track(OutputStream out) throws IOException {
+			streamOpened();
+			return new FSDataOutputStream(out) {
+				private boolean released = false;
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						if (!released) {
+							released = true;
+							streamClosed();
+						}
+					}
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return key;
+		}
+	}
+}
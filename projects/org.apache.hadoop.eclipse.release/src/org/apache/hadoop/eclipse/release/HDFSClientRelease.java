@@ -17,23 +17,34 @@
  */
 package org.apache.hadoop.eclipse.release;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
-import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.eclipse.hdfs.ResourceChecksum;
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation;
+import org.apache.hadoop.eclipse.hdfs.ResourceListing;
+import org.apache.hadoop.eclipse.hdfs.UploadOptions;
+import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.log4j.Logger;
 
@@ -45,10 +56,8 @@ import org.apache.log4j.Logger;
 public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient {
 
 	private static Logger logger = Logger.getLogger(HDFSClientRelease.class);
-	private Configuration config;
 
 	public HDFSClientRelease() {
-		config = new Configuration();
 	}
 
 	private ResourceInformation getResourceInformation(FileStatus fileStatus) {
@@ -56,7 +65,7 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 		fi.setFolder(fileStatus.isDir());
 		fi.setGroup(fileStatus.getGroup());
 		fi.setLastAccessedTime(fileStatus.getAccessTime());
-		fi.setLastModifiedTime(fileStatus.getAccessTime());
+		fi.setLastModifiedTime(fileStatus.getModificationTime());
 		fi.setName(fileStatus.getPath().getName());
 		fi.setOwner(fileStatus.getOwner());
 		fi.setPath(fileStatus.getPath().getParent() == null ? "/" : fileStatus.getPath().getParent().toString());
@@ -75,12 +84,6 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 		permissions.execute = action.implies(FsAction.EXECUTE);
 	}
 	
-	protected FileSystem createFS(URI uri, String user) throws IOException, InterruptedException{
-		if(user==null)
-			return FileSystem.get(uri, config);
-		return FileSystem.get(uri, config, user);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -88,16 +91,19 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public ResourceInformation getResourceInformation(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
 		Path path = new Path(uri.getPath());
 		FileStatus fileStatus = null;
 		ResourceInformation fi = null;
 		try {
-			fileStatus = fs.getFileStatus(path);
+			fileStatus = handle.getFileSystem().getFileStatus(path);
 			fi = getResourceInformation(fileStatus);
 		} catch (FileNotFoundException fne) {
-			logger.info(fne.getMessage());
-			logger.debug(fne.getMessage(), fne);
+			// Expected for resources which only exist locally
+			if (logger.isDebugEnabled())
+				logger.debug(fne.getMessage());
+		} finally {
+			handle.streamClosed();
 		}
 		return fi;
 	}
@@ -110,13 +116,18 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public void setResourceInformation(URI uri, ResourceInformation information, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
-		Path path = new Path(uri.getPath());
-		if (!information.isFolder()) {
-			fs.setTimes(path, information.getLastModifiedTime(), information.getLastAccessedTime());
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		try {
+			FileSystem fs = handle.getFileSystem();
+			Path path = new Path(uri.getPath());
+			if (!information.isFolder()) {
+				fs.setTimes(path, information.getLastModifiedTime(), information.getLastAccessedTime());
+			}
+			if (information.getOwner() != null || information.getGroup() != null)
+				fs.setOwner(path, information.getOwner(), information.getGroup());
+		} finally {
+			handle.streamClosed();
 		}
-		if (information.getOwner() != null || information.getGroup() != null)
-			fs.setOwner(path, information.getOwner(), information.getGroup());
 	}
 
 	/*
@@ -128,9 +139,14 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	@Override
 	public List<ResourceInformation> listResources(URI uri, String user) throws IOException, InterruptedException {
 		List<ResourceInformation> ris = null;
-		FileSystem fs = createFS(uri, user);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
 		Path path = new Path(uri.getPath());
-		FileStatus[] listStatus = fs.listStatus(path);
+		FileStatus[] listStatus;
+		try {
+			listStatus = handle.getFileSystem().listStatus(path);
+		} finally {
+			handle.streamClosed();
+		}
 		if (listStatus != null) {
 			ris = new ArrayList<ResourceInformation>();
 			for (FileStatus ls : listStatus) {
@@ -140,6 +156,83 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 		return ris;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#openListing(java.net.URI,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public ResourceListing openListing(URI uri, String user, int pageSize) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
+		if (!(handle.getFileSystem() instanceof DistributedFileSystem))
+			return super.openListing(uri, user, pageSize);
+		return new DFSResourceListing(handle, new Path(uri.getPath()), pageSize);
+	}
+
+	/**
+	 * Fetches the listing from the NameNode in the partial listings it
+	 * provides (<code>dfs.ls.limit</code> entries each), instead of all at
+	 * once as {@link FileSystem#listStatus(Path)} does.
+	 */
+	private class DFSResourceListing implements ResourceListing {
+		private final FileSystemPool.Handle handle;
+		private final DistributedFileSystem fs;
+		private final Path path;
+		private final int pageSize;
+		private final LinkedList<HdfsFileStatus> fetched = new LinkedList<HdfsFileStatus>();
+		private byte[] lastName = HdfsFileStatus.EMPTY_NAME;
+		private boolean hasMore = true;
+		private boolean closed = false;
+
+		DFSResourceListing(FileSystemPool.Handle handle, Path path, int pageSize) {
+			this.handle = handle;
+			this.fs = (DistributedFileSystem) handle.getFileSystem();
+			this.path = path;
+			this.pageSize = Math.max(1, pageSize);
+			// Keeps the file system open while listing
+			handle.streamOpened();
+		}
+
+		@Override
+		public List<ResourceInformation> nextPage() throws IOException, InterruptedException {
+			if (closed)
+				throw new IOException("Listing closed: " + path);
+			if (fetched.isEmpty() && hasMore) {
+				DirectoryListing listing = fs.getClient().listPaths(path.toUri().getPath(), lastName);
+				if (listing == null) {
+					// Folder does not exist
+					hasMore = false;
+				} else {
+					for (HdfsFileStatus status : listing.getPartialListing())
+						fetched.add(status);
+					hasMore = listing.hasMore();
+					lastName = listing.getLastName();
+				}
+			}
+			if (fetched.isEmpty())
+				return null;
+			List<ResourceInformation> page = new ArrayList<ResourceInformation>(Math.min(pageSize, fetched.size()));
+			while (page.size() < pageSize && !fetched.isEmpty()) {
+				HdfsFileStatus status = fetched.removeFirst();
+				Path childPath = status.getFullPath(path).makeQualified(fs);
+				page.add(getResourceInformation(new FileStatus(status.getLen(), status.isDir(), status.getReplication(), status.getBlockSize(), status
+						.getModificationTime(), status.getAccessTime(), status.getPermission(), status.getOwner(), status.getGroup(), childPath)));
+			}
+			return page;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				fetched.clear();
+				handle.streamClosed();
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -149,10 +242,32 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public InputStream openInputStream(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
+		Path path = new Path(uri.getPath());
+		FSDataInputStream open = handle.getFileSystem().open(path);
+		return handle.track(open);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#openInputStream(java.net.URI,
+	 * java.lang.String, long)
+	 */
+	@Override
+	public InputStream openInputStream(URI uri, String user, long offset) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
 		Path path = new Path(uri.getPath());
-		FSDataInputStream open = fs.open(path);
-		return open;
+		FSDataInputStream open = handle.getFileSystem().open(path);
+		try {
+			if (offset > 0)
+				open.seek(offset);
+		} catch (IOException e) {
+			open.close();
+			throw e;
+		}
+		return handle.track(open);
 	}
 
 	/*
@@ -164,10 +279,10 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public OutputStream createOutputStream(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
 		Path path = new Path(uri.getPath());
-		FSDataOutputStream outputStream = fs.create(path);
-		return outputStream;
+		FSDataOutputStream outputStream = handle.getFileSystem().create(path);
+		return handle.track(outputStream);
 	}
 
 	/*
@@ -179,11 +294,144 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public OutputStream openOutputStream(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
 		Path path = new Path(uri.getPath());
 		// TODO. Temporary fix till Issue#3 is fixed.
-		FSDataOutputStream outputStream = fs.create(path);
-		return outputStream;
+		FSDataOutputStream outputStream = handle.getFileSystem().create(path);
+		return handle.track(outputStream);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#createOutputStream(java.net
+	 * .URI, java.lang.String, org.apache.hadoop.eclipse.hdfs.UploadOptions)
+	 */
+	@Override
+	public OutputStream createOutputStream(URI uri, String user, UploadOptions options) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
+		FileSystem fs = handle.getFileSystem();
+		Path path = new Path(uri.getPath());
+		int bufferSize = options.getBufferSize() > 0 ? options.getBufferSize() : fs.getConf().getInt("io.file.buffer.size", 4096);
+		short replication = options.getReplication() > 0 ? options.getReplication() : fs.getDefaultReplication();
+		long blockSize = options.getBlockSize() > 0 ? options.getBlockSize() : fs.getDefaultBlockSize();
+		FSDataOutputStream outputStream = fs.create(path, true, bufferSize, replication, blockSize);
+		return handle.track(outputStream);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#rename(java.net.URI,
+	 * java.net.URI, java.lang.String)
+	 */
+	@Override
+	public boolean rename(URI uri, URI destination, String user) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		try {
+			return handle.getFileSystem().rename(new Path(uri.getPath()), new Path(destination.getPath()));
+		} finally {
+			handle.streamClosed();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#setReplication(java.net.URI,
+	 * java.lang.String, short)
+	 */
+	@Override
+	public boolean setReplication(URI uri, String user, short replication) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		try {
+			FileSystem fs = handle.getFileSystem();
+			return fs.setReplication(new Path(uri.getPath()), replication > 0 ? replication : fs.getDefaultReplication());
+		} finally {
+			handle.streamClosed();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getDefaultReplication(java.
+	 * net.URI, java.lang.String)
+	 */
+	@Override
+	public short getDefaultReplication(URI uri, String user) throws IOException, InterruptedException {
+		return FileSystemPool.INSTANCE.acquire(uri, user).getFileSystem().getDefaultReplication();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getMinReplicas(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public int getMinReplicas(URI uri, String user) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		BlockLocation[] blocks;
+		try {
+			FileSystem fs = handle.getFileSystem();
+			FileStatus status = fs.getFileStatus(new Path(uri.getPath()));
+			blocks = fs.getFileBlockLocations(status, 0, status.getLen());
+		} finally {
+			handle.streamClosed();
+		}
+		if (blocks == null || blocks.length == 0)
+			return -1;
+		int min = Integer.MAX_VALUE;
+		for (BlockLocation block : blocks)
+			min = Math.min(min, block.getHosts().length);
+		return min;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getFileChecksum(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public ResourceChecksum getFileChecksum(URI uri, String user) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		FileChecksum checksum;
+		try {
+			checksum = handle.getFileSystem().getFileChecksum(new Path(uri.getPath()));
+		} finally {
+			handle.streamClosed();
+		}
+		if (!(checksum instanceof MD5MD5CRC32FileChecksum))
+			return null;
+		// Serialized as bytes per CRC, CRCs per block and the MD5
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(checksum.getBytes()));
+		int bytesPerCrc = in.readInt();
+		long crcPerBlock = in.readLong();
+		byte[] md5 = new byte[16];
+		in.readFully(md5);
+		return new ResourceChecksum(bytesPerCrc, crcPerBlock, md5);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#appendOutputStream(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public OutputStream appendOutputStream(URI uri, String user) throws IOException, InterruptedException {
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquire(uri, user);
+		Path path = new Path(uri.getPath());
+		FSDataOutputStream outputStream = handle.getFileSystem().append(path);
+		return handle.track(outputStream);
 	}
 
 	/*
@@ -194,9 +442,12 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public boolean mkdirs(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
-		Path path = new Path(uri.getPath());
-		return fs.mkdirs(path);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		try {
+			return handle.getFileSystem().mkdirs(new Path(uri.getPath()));
+		} finally {
+			handle.streamClosed();
+		}
 	}
 
 	/*
@@ -207,9 +458,12 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 	 */
 	@Override
 	public void delete(URI uri, String user) throws IOException, InterruptedException {
-		FileSystem fs = createFS(uri, user);
-		Path path = new Path(uri.getPath());
-		fs.delete(path, true);
+		FileSystemPool.Handle handle = FileSystemPool.INSTANCE.acquireInUse(uri, user);
+		try {
+			handle.getFileSystem().delete(new Path(uri.getPath()), true);
+		} finally {
+			handle.streamClosed();
+		}
 	}
 
 	/*
@@ -232,4 +486,24 @@ public class HDFSClientRelease extends org.apache.hadoop.eclipse.hdfs.HDFSClient
 		return idList;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#disconnect(java.net.URI)
+	 */
+	@Override
+	public void disconnect(URI uri) throws IOException {
+		FileSystemPool.INSTANCE.close(uri);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#dispose()
+	 */
+	@Override
+	public void dispose() {
+		FileSystemPool.INSTANCE.shutdown();
+	}
+
 }
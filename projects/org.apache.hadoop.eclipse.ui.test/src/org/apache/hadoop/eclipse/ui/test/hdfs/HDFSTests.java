@@ -12,7 +12,9 @@ import junit.framework.TestSuite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-	ModelTests.class
+	ModelTests.class,
+	ServerURIIndexTests.class,
+	LocalChecksumTests.class
 })
 /**
  * @author Srimanth Gunturi
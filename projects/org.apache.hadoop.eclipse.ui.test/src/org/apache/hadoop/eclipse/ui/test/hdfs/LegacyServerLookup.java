@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.ui.test.hdfs;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The server lookup HDFSManager used before {@link org.apache.hadoop.eclipse.internal.hdfs.ServerURIIndex}: probes a
+ * map of server URIs with every prefix of the URI ending in '/', and caches
+ * the last 1024 results.
+ */
+class LegacyServerLookup<T> {
+
+	private final Map<String, T> uriToServerMap = new HashMap<String, T>();
+
+	private final Map<String, T> uriToServerCacheMap = new LinkedHashMap<String, T>() {
+		private static final long serialVersionUID = 1L;
+		private int MAX_ENTRIES = 1 << 10;
+
+		protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+			return size() > MAX_ENTRIES;
+		};
+	};
+
+	void put(String uri, T server) {
+		uriToServerMap.put(uri, server);
+	}
+
+	T get(String uri) {
+		if (uri != null && !uriToServerCacheMap.containsKey(uri)) {
+			String tmpUri = uri;
+			T serverU = uriToServerMap.get(tmpUri);
+			while (serverU == null) {
+				int lastSlashIndex = tmpUri.lastIndexOf('/');
+				tmpUri = lastSlashIndex < 0 ? null : tmpUri.substring(0, lastSlashIndex);
+				if (tmpUri != null)
+					serverU = uriToServerMap.get(tmpUri + "/");
+				else
+					break;
+			}
+			if (serverU != null)
+				uriToServerCacheMap.put(uri, serverU);
+		}
+		return uriToServerCacheMap.get(uri);
+	}
+}
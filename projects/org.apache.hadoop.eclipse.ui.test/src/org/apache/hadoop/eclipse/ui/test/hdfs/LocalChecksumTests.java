@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.ui.test.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.eclipse.hdfs.ResourceChecksum;
+import org.apache.hadoop.eclipse.internal.hdfs.LocalChecksum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares {@link LocalChecksum#compute(File, int, long)} with the bytes of
+ * the MD5MD5CRC32FileChecksum HDFS reports for the same content: bytes per
+ * CRC, CRCs per block and the MD5.
+ */
+@RunWith(JUnit4.class)
+public class LocalChecksumTests {
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertChecksum("000002000000000000000000d41d8cd98f00b204e9800998ecf8427e", 0, 512, 0);
+	}
+
+	@Test
+	public void testSingleBlock() throws IOException {
+		assertChecksum("000002000000000000000000292b582360997a205a08a1aefcb7e3b3", 1024, 512, 0);
+	}
+
+	@Test
+	public void testSingleBlockPartialChunk() throws IOException {
+		assertChecksum("00000200000000000000000007670bc31bb817837818a9102edd8e5c", 1300, 512, 0);
+	}
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		assertChecksum("0000020000000000000000049aea86bfd234d82429eb777072bca449", 4096, 512, 4);
+	}
+
+	@Test
+	public void testMultipleBlocksPartialChunk() throws IOException {
+		assertChecksum("0000020000000000000000044082ef993849f9f90b5e31733243ef18", 5000, 512, 4);
+	}
+
+	@Test
+	public void testChunksAcrossBuffers() throws IOException {
+		// Chunks of 500 bytes do not line up with the transfer buffers
+		assertChecksum("000001f400000000000000644e8483bf97a0d216976f5545f78a0a1c", 300007, 500, 100);
+	}
+
+	private static void assertChecksum(String expected, int length, int bytesPerCrc, long crcPerBlock) throws IOException {
+		File file = createFile(length);
+		try {
+			assertEquals(expected, toHex(LocalChecksum.compute(file, bytesPerCrc, crcPerBlock)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static File createFile(int length) throws IOException {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++)
+			content[i] = (byte) (i * 31 + i / 251);
+		File file = File.createTempFile("checksum", ".bin");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Serializes the checksum as MD5MD5CRC32FileChecksum.write() does.
+	 */
+	private static String toHex(ResourceChecksum checksum) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(checksum.getBytesPerCrc());
+		out.writeLong(checksum.getCrcPerBlock());
+		out.write(checksum.getMd5());
+		out.close();
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes.toByteArray())
+			hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		return hex.toString();
+	}
+}
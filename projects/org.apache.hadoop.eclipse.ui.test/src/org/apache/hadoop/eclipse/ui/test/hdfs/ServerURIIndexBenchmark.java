@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.ui.test.hdfs;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.eclipse.internal.hdfs.ServerURIIndex;
+
+/**
+ * Compares lookups of {@link ServerURIIndex} with the lookup HDFSManager used
+ * before, over more distinct URIs than its cache holds. Run as a Java
+ * application.
+ */
+public class ServerURIIndexBenchmark {
+
+	private static final int URIS = 100000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) {
+		ServerURIIndex<String> index = new ServerURIIndex<String>();
+		LegacyServerLookup<String> legacy = new LegacyServerLookup<String>();
+		for (String server : ServerURIIndexTests.SERVERS) {
+			index.put(server, server);
+			legacy.put(server, server);
+		}
+		List<String> uris = ServerURIIndexTests.createURIs(new Random(11), URIS);
+		// Printed at the end, so that the JIT cannot drop the lookups
+		long sink = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += runLegacy(legacy, uris);
+			sink += runIndex(index, uris);
+		}
+		long legacyNanos = 0, indexNanos = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			sink += runLegacy(legacy, uris);
+			legacyNanos += System.nanoTime() - start;
+			start = System.nanoTime();
+			sink += runIndex(index, uris);
+			indexNanos += System.nanoTime() - start;
+		}
+		long lookups = (long) ROUNDS * uris.size();
+		System.out.println(String.format("legacy: %.1f ns/lookup", legacyNanos / (double) lookups));
+		System.out.println(String.format("index:  %.1f ns/lookup", indexNanos / (double) lookups));
+		System.out.println("found:  " + sink);
+	}
+
+	private static int runLegacy(LegacyServerLookup<String> legacy, List<String> uris) {
+		int found = 0;
+		for (String uri : uris)
+			if (legacy.get(uri) != null)
+				found++;
+		return found;
+	}
+
+	private static int runIndex(ServerURIIndex<String> index, List<String> uris) {
+		int found = 0;
+		for (String uri : uris)
+			if (index.get(uri) != null)
+				found++;
+		return found;
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.ui.test.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.eclipse.internal.hdfs.ServerURIIndex;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ServerURIIndexTests {
+
+	static final String[] SERVERS = { "hdfs://namenode:8020/", "hdfs://namenode:8020/user/", "hdfs://namenode:8020/user/hadoop/",
+			"hdfs://namenode:8020/user/hadoop", "hdfs://other:8020/data/", "hdfs://other:8020/data-archive/" };
+
+	@Test
+	public void testLongestPrefix() {
+		ServerURIIndex<String> index = new ServerURIIndex<String>();
+		for (String server : SERVERS)
+			index.put(server, server);
+		assertEquals("hdfs://namenode:8020/", index.get("hdfs://namenode:8020/tmp/a"));
+		assertEquals("hdfs://namenode:8020/user/", index.get("hdfs://namenode:8020/user/bob/x"));
+		assertEquals("hdfs://namenode:8020/user/hadoop/", index.get("hdfs://namenode:8020/user/hadoop/x"));
+		assertEquals("hdfs://namenode:8020/user/hadoop", index.get("hdfs://namenode:8020/user/hadoop"));
+		assertEquals("hdfs://namenode:8020/user/", index.get("hdfs://namenode:8020/user/hadoopx"));
+		assertEquals("hdfs://other:8020/data-archive/", index.get("hdfs://other:8020/data-archive/2013"));
+		assertNull(index.get("hdfs://other:8020/data"));
+		assertNull(index.get("hdfs://other:8020/"));
+		assertNull(index.get(null));
+	}
+
+	@Test
+	public void testRemove() {
+		ServerURIIndex<String> index = new ServerURIIndex<String>();
+		for (String server : SERVERS)
+			index.put(server, server);
+		index.remove("hdfs://namenode:8020/user/");
+		assertEquals("hdfs://namenode:8020/", index.get("hdfs://namenode:8020/user/bob/x"));
+		index.clear();
+		assertNull(index.get("hdfs://namenode:8020/user/bob/x"));
+	}
+
+	@Test
+	public void testSameAsLegacyLookup() {
+		ServerURIIndex<String> index = new ServerURIIndex<String>();
+		LegacyServerLookup<String> legacy = new LegacyServerLookup<String>();
+		for (String server : SERVERS) {
+			index.put(server, server);
+			legacy.put(server, server);
+		}
+		for (String uri : createURIs(new Random(7), 20000))
+			assertEquals(uri, legacy.get(uri), index.get(uri));
+	}
+
+	/**
+	 * URIs under, next to and equal to the servers.
+	 */
+	static List<String> createURIs(Random random, int count) {
+		String[] roots = { "hdfs://namenode:8020", "hdfs://namenode:8020/user", "hdfs://namenode:8020/user/hadoop", "hdfs://other:8020",
+				"hdfs://other:8020/data", "hdfs://other:8020/data-archive", "hdfs://unknown:8020" };
+		String[] segments = { "", "a", "b", "logs", "part-00000", "hadoop", "data", "user" };
+		List<String> uris = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder uri = new StringBuilder(roots[random.nextInt(roots.length)]);
+			int depth = random.nextInt(6);
+			for (int d = 0; d < depth; d++)
+				uri.append('/').append(segments[random.nextInt(segments.length)]);
+			if (random.nextInt(4) == 0)
+				uri.append('/');
+			uris.add(uri.toString());
+		}
+		return uris;
+	}
+}
@@ -1,10 +1,12 @@
 package org.apache.hadoop.eclipse.ui.internal.hdfs;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation.Permissions;
-import org.apache.hadoop.eclipse.internal.hdfs.DownloadFileJob;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSFileStore;
+import org.apache.hadoop.eclipse.internal.hdfs.TransferScheduler;
 import org.apache.log4j.Logger;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.resources.IFile;
@@ -33,34 +35,44 @@ public class DownloadResourceAction implements IObjectActionDelegate {
 	public void run(IAction action) {
 		if (this.selection != null && !this.selection.isEmpty()) {
 			IStructuredSelection sSelection = (IStructuredSelection) this.selection;
+			List<IResource> files = new ArrayList<IResource>();
 			@SuppressWarnings("rawtypes")
 			Iterator itr = sSelection.iterator();
 			while (itr.hasNext()) {
 				Object object = itr.next();
 				if (object instanceof IResource) {
 					IResource r = (IResource) object;
-					downloadResource(r);
+					downloadResource(r, files);
 				}
 			}
+			if (!files.isEmpty()) {
+				// A single selected file is waited for, folders are not
+				boolean interactive = sSelection.size() == 1 && sSelection.getFirstElement() instanceof IFile;
+				String name = interactive ? "Downloading " + files.get(0).getLocationURI() : "Downloading " + files.size() + " files";
+				TransferScheduler.INSTANCE.schedule(name, files, TransferScheduler.Kind.DOWNLOAD, interactive ? TransferScheduler.Priority.INTERACTIVE
+						: TransferScheduler.Priority.BULK);
+			}
 		}
 	}
 
 	/**
+	 * Collects the files of the resource.
+	 * 
 	 * @param r
+	 * @param files
 	 */
-	private void downloadResource(IResource r) {
+	private void downloadResource(IResource r, List<IResource> files) {
 		try {
 			switch (r.getType()) {
 			case IFile.FILE:
-				DownloadFileJob dfj = new DownloadFileJob(r);
-				dfj.schedule();
+				files.add(r);
 				break;
 			case IFolder.FOLDER:
 				IFolder folder = (IFolder) r;
 				IResource[] children = folder.members();
 				if (children != null) {
 					for (int cc = 0; cc < children.length; cc++) {
-						downloadResource(children[cc]);
+						downloadResource(children[cc], files);
 					}
 				}
 				break;
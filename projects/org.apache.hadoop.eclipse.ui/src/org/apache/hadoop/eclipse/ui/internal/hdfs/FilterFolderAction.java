@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.ui.internal.hdfs;
+
+import java.net.URI;
+
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSFileSystem;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.window.Window;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.navigator.CommonNavigator;
+
+/**
+ * Limits the children of an HDFS folder shown in the navigator to those
+ * matching a name pattern.
+ */
+public class FilterFolderAction implements IObjectActionDelegate {
+
+	private ISelection selection;
+	private IWorkbenchPart targetPart;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.ui.IActionDelegate#run(org.eclipse.jface.action.IAction)
+	 */
+	@Override
+	public void run(IAction action) {
+		IFolder folder = getSelectedFolder();
+		if (folder == null)
+			return;
+		String current = HDFSFolderPage.getFilter(folder);
+		InputDialog dialog = new InputDialog(targetPart.getSite().getShell(), "Filter Children", "Show only children of " + folder.getName()
+				+ " whose name matches (* and ? are wildcards, empty shows all):", current == null ? "" : current, null);
+		if (dialog.open() == Window.OK) {
+			HDFSFolderPage.setFilter(folder, dialog.getValue());
+			if (targetPart instanceof CommonNavigator)
+				((CommonNavigator) targetPart).getCommonViewer().refresh(folder);
+		}
+	}
+
+	private IFolder getSelectedFolder() {
+		if (this.selection instanceof IStructuredSelection) {
+			IStructuredSelection sSelection = (IStructuredSelection) this.selection;
+			if (sSelection.size() == 1 && sSelection.getFirstElement() instanceof IFolder) {
+				IFolder folder = (IFolder) sSelection.getFirstElement();
+				URI locationURI = folder.getLocationURI();
+				if (locationURI != null && HDFSFileSystem.SCHEME.equals(locationURI.getScheme()))
+					return folder;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.ui.IActionDelegate#selectionChanged(org.eclipse.jface.action
+	 * .IAction, org.eclipse.jface.viewers.ISelection)
+	 */
+	@Override
+	public void selectionChanged(IAction action, ISelection selection) {
+		this.selection = selection;
+		action.setEnabled(getSelectedFolder() != null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.ui.IObjectActionDelegate#setActivePart(org.eclipse.jface.
+	 * action.IAction, org.eclipse.ui.IWorkbenchPart)
+	 */
+	@Override
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		this.targetPart = targetPart;
+	}
+
+}
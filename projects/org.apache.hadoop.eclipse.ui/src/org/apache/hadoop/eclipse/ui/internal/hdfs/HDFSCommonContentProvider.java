@@ -18,40 +18,65 @@
 package org.apache.hadoop.eclipse.ui.internal.hdfs;
 
 import java.net.URI;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
-import org.apache.hadoop.eclipse.internal.HadoopManager;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSFileSystem;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSManager;
+import org.apache.hadoop.eclipse.internal.hdfs.ServerOperationTracker;
 import org.apache.hadoop.eclipse.internal.model.HDFSServer;
-import org.apache.hadoop.eclipse.internal.model.HadoopPackage;
 import org.apache.log4j.Logger;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.emf.common.notify.Notification;
-import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IMemento;
-import org.eclipse.ui.IViewPart;
-import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.navigator.CommonNavigator;
-import org.eclipse.ui.navigator.CommonViewer;
 import org.eclipse.ui.navigator.ICommonContentExtensionSite;
-import org.eclipse.ui.navigator.ICommonContentProvider;
-import org.eclipse.ui.navigator.INavigatorContentService;
+import org.eclipse.ui.navigator.IPipelinedTreeContentProvider;
+import org.eclipse.ui.navigator.PipelinedShapeModification;
+import org.eclipse.ui.navigator.PipelinedViewerUpdate;
 
-public class HDFSCommonContentProvider implements ICommonContentProvider {
+/**
+ * Adds HDFS specific content to the resource navigator.
+ * <p>
+ * Large HDFS folders are shown in pages. When a folder has more children than
+ * the threshold, or a name filter is set on it, only the first page of its
+ * children is shown, followed by a {@link HDFSFolderPage} node which shows the
+ * next page when expanded. This keeps the number of tree items, labels and
+ * decorations created for a folder bounded, however large it is. The sorted
+ * children of a paged folder are kept until the folder is refreshed, so
+ * expanding further pages does not list or sort the folder again.
+ */
+public class HDFSCommonContentProvider implements IPipelinedTreeContentProvider {
 
 	private static final Logger logger = Logger.getLogger(HDFSCommonContentProvider.class);
+	private static final int DEFAULT_PAGE_THRESHOLD = 1000;
+	private static final int DEFAULT_PAGE_SIZE = 500;
 
-	private String viewerId;
 	private Display display = null;
+	private StructuredViewer viewer = null;
+	private final int pageThreshold = HadoopPreferences.getInt(HadoopPreferences.NAVIGATOR_PAGE_THRESHOLD, DEFAULT_PAGE_THRESHOLD);
+	private final int pageSize = Math.max(1, HadoopPreferences.getInt(HadoopPreferences.NAVIGATOR_PAGE_SIZE, DEFAULT_PAGE_SIZE));
 
-	private EContentAdapter serversListener;
+	private final Map<IContainer, List<IResource>> pagedMembers = new ConcurrentHashMap<IContainer, List<IResource>>();
+	private ServerOperationTracker.Listener operationListener;
+	private ViewerRefreshScheduler refreshScheduler;
 
 	@Override
 	public Object[] getElements(Object inputElement) {
@@ -60,33 +85,182 @@ public class HDFSCommonContentProvider implements ICommonContentProvider {
 
 	@Override
 	public Object[] getChildren(Object parentElement) {
-		// TODO Auto-generated method stub
+		if (parentElement instanceof HDFSFolderPage) {
+			HDFSFolderPage page = (HDFSFolderPage) parentElement;
+			try {
+				List<IResource> members = pagedMembers.get(page.getFolder());
+				if (members == null) {
+					members = getShownMembers(page.getFolder(), Arrays.asList(page.getFolder().members()));
+					pagedMembers.put(page.getFolder(), members);
+				}
+				return getPage(page, page.getFolder(), members, page.getOffset()).toArray();
+			} catch (CoreException e) {
+				logger.warn(e.getMessage(), e);
+				return new Object[0];
+			}
+		}
 		return null;
 	}
 
 	@Override
 	public Object getParent(Object element) {
-		// TODO Auto-generated method stub
+		if (element instanceof HDFSFolderPage)
+			return ((HDFSFolderPage) element).getParent();
 		return null;
 	}
 
 	@Override
 	public boolean hasChildren(Object element) {
+		return element instanceof HDFSFolderPage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.ui.navigator.IPipelinedTreeContentProvider#getPipelinedChildren
+	 * (java.lang.Object, java.util.Set)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public void getPipelinedChildren(Object aParent, Set theCurrentChildren) {
+		if (!(aParent instanceof IContainer) || !isHDFSResource((IContainer) aParent))
+			return;
+		IContainer folder = (IContainer) aParent;
+		if (theCurrentChildren.size() <= pageThreshold && HDFSFolderPage.getFilter(folder) == null) {
+			pagedMembers.remove(folder);
+			return;
+		}
+		List<IResource> resources = new ArrayList<IResource>();
+		Iterator it = theCurrentChildren.iterator();
+		while (it.hasNext()) {
+			Object child = it.next();
+			if (child instanceof IResource) {
+				resources.add((IResource) child);
+				it.remove();
+			}
+		}
+		// Called again whenever the folder is refreshed, which replaces the
+		// kept children
+		List<IResource> members = getShownMembers(folder, resources);
+		pagedMembers.put(folder, members);
+		theCurrentChildren.addAll(getPage(folder, folder, members, 0));
+		if (logger.isDebugEnabled())
+			logger.debug("getPipelinedChildren(" + folder + "): Showing first page of " + members.size() + " children");
+	}
+
+	/**
+	 * Children of the folder which are shown, in the order they are paged.
+	 */
+	private List<IResource> getShownMembers(IContainer folder, List<IResource> resources) {
+		Pattern filter = HDFSFolderPage.getFilterPattern(folder);
+		List<IResource> members = new ArrayList<IResource>(resources.size());
+		for (IResource resource : resources) {
+			if (filter == null || filter.matcher(resource.getName()).matches())
+				members.add(resource);
+		}
+		// Folders first, then by name, like the navigator sorts them
+		final Collator collator = Collator.getInstance();
+		Collections.sort(members, new Comparator<IResource>() {
+			@Override
+			public int compare(IResource r1, IResource r2) {
+				boolean c1 = r1 instanceof IContainer;
+				boolean c2 = r2 instanceof IContainer;
+				if (c1 != c2)
+					return c1 ? -1 : 1;
+				return collator.compare(r1.getName(), r2.getName());
+			}
+		});
+		return members;
+	}
+
+	private List<Object> getPage(Object parent, IContainer folder, List<IResource> members, int offset) {
+		int end = Math.min(members.size(), offset + pageSize);
+		List<Object> page = new ArrayList<Object>(end - offset + 1);
+		if (offset < end)
+			page.addAll(members.subList(offset, end));
+		if (end < members.size())
+			page.add(new HDFSFolderPage(parent, folder, end, members.size()));
+		return page;
+	}
+
+	private boolean isHDFSResource(IResource resource) {
+		URI locationURI = resource.getLocationURI();
+		return locationURI != null && HDFSFileSystem.SCHEME.equals(locationURI.getScheme());
+	}
+
+	/**
+	 * @return <code>true</code> when children of the folder are currently
+	 *         shown in pages
+	 */
+	private boolean isPaged(Object element) {
+		return element instanceof IContainer && pagedMembers.containsKey(element);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void getPipelinedElements(Object anInput, Set theCurrentElements) {
+	}
+
+	@Override
+	public Object getPipelinedParent(Object anObject, Object aSuggestedParent) {
+		return aSuggestedParent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.ui.navigator.IPipelinedTreeContentProvider#interceptAdd(org
+	 * .eclipse.ui.navigator.PipelinedShapeModification)
+	 */
+	@Override
+	public PipelinedShapeModification interceptAdd(PipelinedShapeModification anAddModification) {
+		Object parent = anAddModification.getParent();
+		if (isPaged(parent)) {
+			// Added children belong into one of the pages. Show the folder
+			// again rather than appending them at its end.
+			anAddModification.getChildren().clear();
+			if (refreshScheduler != null)
+				refreshScheduler.refresh(parent);
+		}
+		return anAddModification;
+	}
+
+	@Override
+	public PipelinedShapeModification interceptRemove(PipelinedShapeModification aRemoveModification) {
+		return aRemoveModification;
+	}
+
+	@Override
+	public boolean interceptRefresh(PipelinedViewerUpdate aRefreshSynchronization) {
+		return false;
+	}
+
+	@Override
+	public boolean interceptUpdate(PipelinedViewerUpdate anUpdateSynchronization) {
 		return false;
 	}
 
 	@Override
 	public void dispose() {
-		if (serversListener != null) {
-			HadoopManager.INSTANCE.getServers().eAdapters().remove(serversListener);
-			serversListener = null;
+		if (operationListener != null) {
+			ServerOperationTracker.INSTANCE.removeListener(operationListener);
+			operationListener = null;
+		}
+		pagedMembers.clear();
+		HDFSFolderPage.pruneFilters();
+		if (refreshScheduler != null) {
+			refreshScheduler.dispose();
+			refreshScheduler = null;
 		}
 	}
 
 	@Override
 	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-		// TODO Auto-generated method stub
-
+		this.viewer = viewer instanceof StructuredViewer ? (StructuredViewer) viewer : null;
+		if (refreshScheduler != null)
+			refreshScheduler.setViewer(this.viewer);
 	}
 
 	@Override
@@ -103,86 +277,50 @@ public class HDFSCommonContentProvider implements ICommonContentProvider {
 
 	@Override
 	public void init(ICommonContentExtensionSite aConfig) {
-		INavigatorContentService cs = aConfig.getService();
-		viewerId = cs.getViewerId();
 		this.display = PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell().getDisplay();
+		this.refreshScheduler = new ViewerRefreshScheduler(display);
+		refreshScheduler.setViewer(viewer);
 		hookRefreshResources();
 	}
 
+	/**
+	 * Refreshes resources once their transfers end. Changes arrive coalesced
+	 * from the {@link ServerOperationTracker}, and are handed to the
+	 * {@link ViewerRefreshScheduler}, which refreshes them in batches.
+	 */
 	protected void hookRefreshResources() {
-		serversListener = new EContentAdapter() {
-			private List<String> addedUris = new ArrayList<String>();
-
-			public boolean isAdapterForType(Object type) {
-				return HadoopPackage.eINSTANCE.getHDFSServer().isInstance(type);
+		operationListener = new ServerOperationTracker.Listener() {
+			@Override
+			public void operationsChanged(Set<String> started, Set<String> stopped) {
+				if (!stopped.isEmpty())
+					refreshResources(stopped);
 			}
+		};
+		ServerOperationTracker.INSTANCE.addListener(operationListener);
+	}
 
-			public void notifyChanged(org.eclipse.emf.common.notify.Notification notification) {
-				super.notifyChanged(notification);
-				if (notification.getNotifier() instanceof HDFSServer) {
-					int featureID = notification.getFeatureID(HDFSServer.class);
-					if (featureID == HadoopPackage.HDFS_SERVER__OPERATION_UR_IS) {
-						if (notification.getEventType() == Notification.ADD) {
-							Object[] array = ((HDFSServer) notification.getNotifier()).getOperationURIs().toArray();
-							for (int ac = 0; ac < array.length; ac++) {
-								String uri = (String) array[ac];
-								addedUris.add(uri);
-							}
-						} else if (addedUris.size() > 0 && display != null) {
-							display.asyncExec(new Runnable() {
-								@Override
-								public void run() {
-									CommonViewer viewer = null;
-									try {
-										IViewPart view = PlatformUI.getWorkbench().getActiveWorkbenchWindow().getActivePage().showView(viewerId);
-										if (view instanceof CommonNavigator) {
-											CommonNavigator navigator = (CommonNavigator) view;
-											viewer = navigator.getCommonViewer();
-										}
-									} catch (PartInitException e) {
-									}
-									if (viewer != null) {
-										Object[] addedArray = addedUris.toArray();
-										for (int ac = 0; ac < addedArray.length; ac++) {
-											String uri = (String) addedArray[ac];
-											HDFSServer server = HDFSManager.INSTANCE.getServer(uri);
-											if (server != null) {
-												try {
-													URI relativeURI = org.eclipse.core.runtime.URIUtil.makeRelative(new URI(uri), new URI(server.getUri()));
-													if (relativeURI != null) {
-														String projectName = HDFSManager.INSTANCE.getProjectName(server);
-														if (projectName != null) {
-															IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile(
-																	new Path(projectName + "/" + relativeURI.toString()));
-															if (file != null) {
-																viewer.refresh(file, true);
-																if (logger.isDebugEnabled())
-																	logger.debug("EMF listener: Refreshed [" + file.getFullPath() + "]");
-																IContainer parent = file.getParent();
-																while (parent != null) {
-																	viewer.refresh(parent, true);
-																	parent = parent.getParent();
-																}
-															}
-														}
-													}
-												} catch (Throwable t) {
-													if (logger.isDebugEnabled())
-														logger.debug(t);
-												}
-											}
-										}
-									}
-									addedUris.clear();
-								}
-							});
-						}
-
-					}
-				}
+	private void refreshResources(Set<String> uris) {
+		ViewerRefreshScheduler refreshScheduler = this.refreshScheduler;
+		if (refreshScheduler == null)
+			return;
+		for (String uri : uris) {
+			HDFSServer server = HDFSManager.INSTANCE.getServer(uri);
+			if (server == null)
+				continue;
+			try {
+				URI relativeURI = org.eclipse.core.runtime.URIUtil.makeRelative(new URI(uri), new URI(server.getUri()));
+				String projectName = HDFSManager.INSTANCE.getProjectName(server);
+				if (relativeURI == null || projectName == null)
+					continue;
+				IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile(new Path(projectName + "/" + relativeURI.toString()));
+				refreshScheduler.refresh(file);
+				if (logger.isDebugEnabled())
+					logger.debug("Operation listener: Scheduled refresh of [" + file.getFullPath() + "]");
+			} catch (Throwable t) {
+				if (logger.isDebugEnabled())
+					logger.debug(t);
 			}
-		};
-		HadoopManager.INSTANCE.getServers().eAdapters().add(serversListener);
+		}
 	}
 
 }
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.ui.internal.hdfs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSUtilites;
+import org.eclipse.core.resources.IContainer;
+
+/**
+ * Navigator node standing for the children of a large HDFS folder which are
+ * not shown yet. Expanding it shows the next page of children, followed by
+ * another such node when more remain.
+ */
+public class HDFSFolderPage {
+
+	private static final Map<IContainer, String> filters = new ConcurrentHashMap<IContainer, String>();
+
+	private final Object parent;
+	private final IContainer folder;
+	private final int offset;
+	private final int total;
+	private final String filter;
+
+	/**
+	 * @param parent
+	 *            the folder, or the previous page
+	 * @param folder
+	 * @param offset
+	 *            index of the first child in this page
+	 * @param total
+	 *            number of children of the folder which are shown
+	 */
+	public HDFSFolderPage(Object parent, IContainer folder, int offset, int total) {
+		this.parent = parent;
+		this.folder = folder;
+		this.offset = offset;
+		this.total = total;
+		this.filter = getFilter(folder);
+	}
+
+	public Object getParent() {
+		return parent;
+	}
+
+	public IContainer getFolder() {
+		return folder;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public String getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Limits the children of the folder shown in the navigator to those whose
+	 * name matches the pattern.
+	 *
+	 * @param folder
+	 * @param filter
+	 *            name pattern, where <code>*</code> and <code>?</code> are
+	 *            wildcards. <code>null</code> or empty to show all children.
+	 */
+	public static void setFilter(IContainer folder, String filter) {
+		pruneFilters();
+		if (filter == null || filter.trim().length() == 0)
+			filters.remove(folder);
+		else
+			filters.put(folder, filter.trim());
+	}
+
+	/**
+	 * Forgets the filters of folders which no longer exist.
+	 */
+	public static void pruneFilters() {
+		for (IContainer folder : filters.keySet()) {
+			if (!folder.exists())
+				filters.remove(folder);
+		}
+	}
+
+	/**
+	 * @param folder
+	 * @return the name pattern of the folder, or <code>null</code>
+	 */
+	public static String getFilter(IContainer folder) {
+		return filters.get(folder);
+	}
+
+	/**
+	 * @param folder
+	 * @return the compiled name pattern of the folder, or <code>null</code>
+	 */
+	public static Pattern getFilterPattern(IContainer folder) {
+		String filter = filters.get(folder);
+		return filter == null ? null : HDFSUtilites.compileGlob(filter);
+	}
+
+	@Override
+	public int hashCode() {
+		return folder.hashCode() * 31 + offset;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof HDFSFolderPage))
+			return false;
+		HDFSFolderPage other = (HDFSFolderPage) obj;
+		return offset == other.offset && folder.equals(other.folder);
+	}
+
+	@Override
+	public String toString() {
+		return folder.getFullPath() + "[" + offset + "/" + total + "]";
+	}
+}
@@ -23,6 +23,8 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.ui.IMemento;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.navigator.ICommonContentExtensionSite;
 import org.eclipse.ui.navigator.ICommonLabelProvider;
 
@@ -50,6 +52,8 @@ public class HDFSLabelProvider implements ICommonLabelProvider {
 			if (HDFSFileSystem.SCHEME.equals(project.getLocationURI().getScheme())) {
 				return Activator.IMAGE_HDFS;
 			}
+		} else if (element instanceof HDFSFolderPage) {
+			return PlatformUI.getWorkbench().getSharedImages().getImage(ISharedImages.IMG_OBJS_INFO_TSK);
 		}
 		return null;
 	}
@@ -61,6 +65,13 @@ public class HDFSLabelProvider implements ICommonLabelProvider {
 	 */
 	@Override
 	public String getText(Object element) {
+		if (element instanceof HDFSFolderPage) {
+			HDFSFolderPage page = (HDFSFolderPage) element;
+			String text = "More: " + (page.getTotal() - page.getOffset()) + " of " + page.getTotal() + " children not shown";
+			if (page.getFilter() != null)
+				text += " (matching '" + page.getFilter() + "')";
+			return text;
+		}
 		return null;
 	}
 
@@ -137,6 +148,8 @@ public class HDFSLabelProvider implements ICommonLabelProvider {
 	 */
 	@Override
 	public String getDescription(Object anElement) {
+		if (anElement instanceof HDFSFolderPage)
+			return "Expand to show the next children of " + ((HDFSFolderPage) anElement).getFolder().getName();
 		return null;
 	}
 
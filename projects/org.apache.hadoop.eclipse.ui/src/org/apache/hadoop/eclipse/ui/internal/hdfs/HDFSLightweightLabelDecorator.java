@@ -18,29 +18,165 @@
 package org.apache.hadoop.eclipse.ui.internal.hdfs;
 
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation.Permissions;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSFileStore;
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSIdentityCache;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSManager;
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSMetadataCache;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSURI;
+import org.apache.hadoop.eclipse.internal.hdfs.ServerOperationTracker;
 import org.apache.hadoop.eclipse.internal.model.HDFSServer;
 import org.apache.hadoop.eclipse.internal.model.ServerStatus;
 import org.apache.log4j.Logger;
 import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.IDecoration;
 import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.jface.viewers.ILightweightLabelDecorator;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
 
+/**
+ * Decorates HDFS resources only from server information which is already
+ * known, so that decorating never waits for the server. Resources whose
+ * information is not known get a placeholder overlay, and their parent
+ * folders are listed in batches by a background job. Once a batch is done,
+ * one {@link LabelProviderChangedEvent} is fired for all its resources.
+ * <p>
+ * What decorating needs from a listing, whether each child is on the server
+ * and whether it is read only, is kept in a snapshot per folder. Snapshots do
+ * not depend on the metadata cache, so scrolling through a folder larger than
+ * the cache needs no further server calls either. A child becomes stale in
+ * the snapshot when it is added or removed in the workspace, or a transfer of
+ * it ends, and stale children are looked up one at a time. A snapshot is
+ * replaced by a new listing once it is older than the
+ * <code>navigatorDecorationTTL</code> preference.
+ */
 public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator {
 	private static final Logger logger = Logger.getLogger(HDFSLightweightLabelDecorator.class);
+	private static final long BATCH_DELAY_MILLIS = 100;
+	private static final long DEFAULT_SNAPSHOT_TTL_MILLIS = 10 * 60 * 1000;
+	private static final int MAX_SNAPSHOTS = 32;
+	/**
+	 * Above this many stale children a folder is listed again instead.
+	 */
+	private static final int MAX_STALE_CHILDREN = 64;
+
+	private enum ServerState {
+		UNKNOWN, NOT_ON_SERVER, WRITABLE, READ_ONLY
+	}
+
+	/**
+	 * Server state of the children of a folder, from one listing.
+	 */
+	private static class FolderSnapshot {
+		private final long created = System.currentTimeMillis();
+		/**
+		 * Names of the children on the server, and whether they are read only
+		 */
+		private final Map<String, Boolean> serverChildren = new HashMap<String, Boolean>();
+		private final Set<String> staleChildren = new HashSet<String>();
+		private boolean relisting = false;
+	}
+
+	private final ListenerList listeners = new ListenerList();
+	private final Set<IResource> pendingResources = new LinkedHashSet<IResource>();
+	private final Set<IResource> unavailableResources = Collections.synchronizedSet(new HashSet<IResource>());
+	private final long snapshotTtlMillis = HadoopPreferences.getLong(HadoopPreferences.NAVIGATOR_DECORATION_TTL, DEFAULT_SNAPSHOT_TTL_MILLIS);
+	private final Map<String, FolderSnapshot> snapshots = new LinkedHashMap<String, FolderSnapshot>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FolderSnapshot> eldest) {
+			return size() > MAX_SNAPSHOTS;
+		}
+	};
+	private final Job decorationJob = new Job("Decorating HDFS resources") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			return decoratePending(monitor);
+		}
+	};
+
+	private final IResourceChangeListener resourceListener = new IResourceChangeListener() {
+		@Override
+		public void resourceChanged(IResourceChangeEvent event) {
+			IResourceDelta delta = event.getDelta();
+			if (delta == null)
+				return;
+			try {
+				delta.accept(new IResourceDeltaVisitor() {
+					@Override
+					public boolean visit(IResourceDelta delta) throws CoreException {
+						IResource resource = delta.getResource();
+						if (resource.getType() == IResource.ROOT)
+							return true;
+						URI locationURI = resource.getLocationURI();
+						if (locationURI == null || !HDFSURI.SCHEME.equals(locationURI.getScheme()))
+							return false;
+						if (delta.getKind() == IResourceDelta.ADDED || delta.getKind() == IResourceDelta.REMOVED)
+							childChanged(locationURI);
+						if (delta.getKind() == IResourceDelta.REMOVED) {
+							synchronized (snapshots) {
+								snapshots.remove(getKey(locationURI.getScheme(), locationURI.getAuthority(), locationURI.getPath()));
+							}
+						}
+						return true;
+					}
+				});
+			} catch (CoreException e) {
+				logger.debug(e.getMessage(), e);
+			}
+		}
+	};
+
+	private final ServerOperationTracker.Listener operationListener = new ServerOperationTracker.Listener() {
+		@Override
+		public void operationsChanged(Set<String> started, Set<String> stopped) {
+			for (String uri : stopped) {
+				try {
+					childChanged(new URI(uri));
+				} catch (URISyntaxException e) {
+					logger.debug(e.getMessage(), e);
+				}
+			}
+		}
+	};
 
 	/**
 	 * 
 	 */
 	public HDFSLightweightLabelDecorator() {
+		decorationJob.setSystem(true);
+		decorationJob.setPriority(Job.DECORATE);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceListener, IResourceChangeEvent.POST_CHANGE);
+		ServerOperationTracker.INSTANCE.addListener(operationListener);
 	}
 
 	/*
@@ -52,6 +188,7 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 	 */
 	@Override
 	public void addListener(ILabelProviderListener listener) {
+		listeners.add(listener);
 	}
 
 	/*
@@ -61,6 +198,17 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 	 */
 	@Override
 	public void dispose() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceListener);
+		ServerOperationTracker.INSTANCE.removeListener(operationListener);
+		decorationJob.cancel();
+		synchronized (pendingResources) {
+			pendingResources.clear();
+		}
+		synchronized (snapshots) {
+			snapshots.clear();
+		}
+		unavailableResources.clear();
+		listeners.clear();
 	}
 
 	/*
@@ -85,8 +233,7 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 	 */
 	@Override
 	public void removeListener(ILabelProviderListener listener) {
-		// TODO Auto-generated method stub
-
+		listeners.remove(listener);
 	}
 
 	/*
@@ -110,11 +257,12 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 							String serverUrl = server.getUri();
 							String userId = server.getUserId();
 							if (userId == null) {
-								try {
-									userId = hdfsManager.getClient(serverUrl).getDefaultUserAndGroupIds().get(0);
-								} catch (Throwable e) {
-									userId = null;
-								}
+								// Looked up in the background when unknown
+								HDFSIdentityCache.Identity identity = hdfsManager.getIdentityCache(serverUrl).peekIdentity();
+								if (identity != null)
+									userId = identity.getUserId();
+								else
+									schedule(r);
 							}
 							if (userId == null)
 								userId = "";
@@ -136,8 +284,24 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 								decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_ONLINE_OVR);
 						} else
 							decoration.addSuffix(" [Unknown server]");
-					} else
-						decorate((HDFSFileStore) EFS.getStore(locationURI), decoration);
+					} else {
+						HDFSFileStore store = (HDFSFileStore) EFS.getStore(locationURI);
+						ServerState state = getSnapshotState(r, true);
+						if (state != ServerState.UNKNOWN)
+							decorate(store.isLocalFile(), state != ServerState.NOT_ON_SERVER, state == ServerState.READ_ONLY, decoration);
+						else if (store.isServerInfoAvailable() || isDisconnected(locationURI))
+							decorate(store, decoration);
+						else {
+							if (store.isLocalFile())
+								decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_LOCAL_OVR, IDecoration.BOTTOM_LEFT);
+							// Fetched once already without success. Do not
+							// queue it again until the next decoration.
+							if (!unavailableResources.remove(r)) {
+								decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_SYNC_OVR, IDecoration.BOTTOM_RIGHT);
+								schedule(r);
+							}
+						}
+					}
 				} catch (CoreException e) {
 					logger.debug(e.getMessage(), e);
 				}
@@ -146,18 +310,244 @@ public class HDFSLightweightLabelDecorator implements ILightweightLabelDecorator
 	}
 
 	protected void decorate(HDFSFileStore store, IDecoration decoration) {
-		if (store != null) {
-			if (store.isLocalFile())
-				decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_LOCAL_OVR, IDecoration.BOTTOM_LEFT);
-			else if (store.isRemoteFile())
-				decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_REMOTE_OVR, IDecoration.BOTTOM_LEFT);
-			if (store.isLocalOnly())
-				decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_OUTGOING_OVR, IDecoration.BOTTOM_RIGHT);
+		if (store != null)
+			decorate(store.isLocalFile(), store.isRemoteFile(), isReadOnly(store.getEffectivePermissions()), decoration);
+	}
 
-			Permissions effectivePermissions = store.getEffectivePermissions();
-			if (effectivePermissions != null && !effectivePermissions.read && !effectivePermissions.write)
-				decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_READONLY_OVR);
+	private void decorate(boolean local, boolean remote, boolean readOnly, IDecoration decoration) {
+		if (local)
+			decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_LOCAL_OVR, IDecoration.BOTTOM_LEFT);
+		else if (remote)
+			decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_REMOTE_OVR, IDecoration.BOTTOM_LEFT);
+		if (local && !remote)
+			decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_OUTGOING_OVR, IDecoration.BOTTOM_RIGHT);
+		if (readOnly)
+			decoration.addOverlay(org.apache.hadoop.eclipse.ui.Activator.IMAGE_READONLY_OVR);
+	}
+
+	private static boolean isReadOnly(Permissions effectivePermissions) {
+		return effectivePermissions != null && !effectivePermissions.read && !effectivePermissions.write;
+	}
+
+	/**
+	 * Looks the resource up in the snapshot of its parent.
+	 * 
+	 * @param resource
+	 * @param relistExpired
+	 *            whether to queue the resource when the snapshot has
+	 *            expired, so that its parent is listed again
+	 */
+	private ServerState getSnapshotState(IResource resource, boolean relistExpired) {
+		IContainer parent = resource.getParent();
+		URI parentURI = parent == null ? null : parent.getLocationURI();
+		if (parentURI == null)
+			return ServerState.UNKNOWN;
+		String key = getKey(parentURI.getScheme(), parentURI.getAuthority(), parentURI.getPath());
+		boolean relist = false;
+		ServerState state;
+		synchronized (snapshots) {
+			FolderSnapshot snapshot = snapshots.get(key);
+			if (snapshot == null || snapshot.staleChildren.contains(resource.getName()))
+				return ServerState.UNKNOWN;
+			if (relistExpired && !snapshot.relisting && System.currentTimeMillis() - snapshot.created >= snapshotTtlMillis) {
+				// Decorated from the old snapshot until the new one is there
+				snapshot.relisting = true;
+				relist = true;
+			}
+			Boolean readOnly = snapshot.serverChildren.get(resource.getName());
+			if (readOnly == null)
+				state = ServerState.NOT_ON_SERVER;
+			else
+				state = readOnly.booleanValue() ? ServerState.READ_ONLY : ServerState.WRITABLE;
 		}
+		if (relist)
+			schedule(resource);
+		return state;
 	}
 
+	/**
+	 * Marks the resource stale in the snapshot of its parent. A snapshot with
+	 * too many stale children is dropped, so that the parent is listed again.
+	 */
+	private void childChanged(URI uri) {
+		String path = uri.getPath();
+		if (path == null)
+			return;
+		if (path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+		int index = path.lastIndexOf('/');
+		if (index < 0)
+			return;
+		String key = getKey(uri.getScheme(), uri.getAuthority(), path.substring(0, index));
+		synchronized (snapshots) {
+			FolderSnapshot snapshot = snapshots.get(key);
+			if (snapshot != null) {
+				snapshot.staleChildren.add(path.substring(index + 1));
+				if (snapshot.staleChildren.size() > MAX_STALE_CHILDREN)
+					snapshots.remove(key);
+			}
+		}
+	}
+
+	private static String getKey(String scheme, String authority, String path) {
+		StringBuilder key = new StringBuilder();
+		key.append(scheme).append("://");
+		if (authority != null)
+			key.append(authority);
+		if (path != null) {
+			if (path.endsWith("/"))
+				key.append(path, 0, path.length() - 1);
+			else
+				key.append(path);
+		}
+		return key.toString();
+	}
+
+	private boolean isDisconnected(URI locationURI) {
+		HDFSServer server = HDFSManager.INSTANCE.getServer(locationURI.toString());
+		return server == null || server.getStatusCode() == ServerStatus.DISCONNECTED_VALUE;
+	}
+
+	/**
+	 * Queues the resource for the background job, which fetches what is
+	 * needed to decorate it.
+	 */
+	private void schedule(IResource resource) {
+		synchronized (pendingResources) {
+			if (!pendingResources.add(resource))
+				return;
+		}
+		decorationJob.schedule(BATCH_DELAY_MILLIS);
+	}
+
+	/**
+	 * Lists the parent folder of every queued resource once, looks up the
+	 * default user of queued projects, and fires a single event for all of
+	 * them. Only resources which are still unknown after that, such as stale
+	 * children or children of folders which could not be listed, are looked
+	 * up one at a time.
+	 */
+	private IStatus decoratePending(IProgressMonitor monitor) {
+		List<IResource> resources;
+		synchronized (pendingResources) {
+			resources = new ArrayList<IResource>(pendingResources);
+			pendingResources.clear();
+		}
+		if (resources.isEmpty())
+			return Status.OK_STATUS;
+		Map<String, IContainer> parents = new LinkedHashMap<String, IContainer>();
+		for (IResource resource : resources) {
+			if (resource instanceof IProject) {
+				URI locationURI = resource.getLocationURI();
+				HDFSServer server = locationURI == null ? null : HDFSManager.INSTANCE.getServer(locationURI.toString());
+				if (server != null)
+					HDFSManager.INSTANCE.getIdentityCache(server.getUri()).getIdentity();
+			} else if (resource.getParent() != null) {
+				URI parentURI = resource.getParent().getLocationURI();
+				if (parentURI == null)
+					continue;
+				String key = getKey(parentURI.getScheme(), parentURI.getAuthority(), parentURI.getPath());
+				synchronized (snapshots) {
+					FolderSnapshot snapshot = snapshots.get(key);
+					if (snapshot == null || snapshot.relisting)
+						parents.put(key, resource.getParent());
+				}
+			}
+		}
+		for (Map.Entry<String, IContainer> parent : parents.entrySet()) {
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			URI locationURI = parent.getValue().getLocationURI();
+			if (isDisconnected(locationURI))
+				continue;
+			FolderSnapshot snapshot = listFolder(locationURI, monitor);
+			if (snapshot != null) {
+				synchronized (snapshots) {
+					snapshots.put(parent.getKey(), snapshot);
+				}
+			}
+		}
+		int lookedUp = 0;
+		for (IResource resource : resources) {
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			URI locationURI = resource.getLocationURI();
+			if (resource instanceof IProject || locationURI == null || isDisconnected(locationURI))
+				continue;
+			if (getSnapshotState(resource, false) == ServerState.UNKNOWN) {
+				lookUp(resource, locationURI);
+				lookedUp++;
+			}
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("decoratePending(): " + resources.size() + " resources from " + parents.size() + " folders, " + lookedUp + " looked up");
+		fireLabelProviderChanged(resources.toArray());
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Lists the folder, and takes the server state of its children from the
+	 * listing.
+	 * 
+	 * @return <code>null</code> when the folder could not be listed
+	 */
+	private FolderSnapshot listFolder(URI folderURI, IProgressMonitor monitor) {
+		FolderSnapshot snapshot = new FolderSnapshot();
+		try {
+			HDFSFileStore folder = (HDFSFileStore) EFS.getStore(folderURI);
+			for (Map.Entry<String, HDFSMetadataCache.Entry> child : folder.listServerEntries(monitor).entrySet()) {
+				HDFSMetadataCache.Entry entry = child.getValue();
+				if (entry.getFileInfo().exists())
+					snapshot.serverChildren.put(child.getKey(), isReadOnly(entry.getEffectivePermissions()));
+			}
+		} catch (CoreException e) {
+			logger.debug(e.getMessage(), e);
+			return null;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Fetches the server information of a single resource, and updates the
+	 * snapshot of its parent with it.
+	 */
+	private void lookUp(IResource resource, URI locationURI) {
+		try {
+			HDFSFileStore store = (HDFSFileStore) EFS.getStore(locationURI);
+			boolean remote = store.isRemoteFile();
+			if (!store.isServerInfoAvailable()) {
+				unavailableResources.add(resource);
+				return;
+			}
+			boolean readOnly = isReadOnly(store.getEffectivePermissions());
+			URI parentURI = resource.getParent().getLocationURI();
+			if (parentURI == null)
+				return;
+			String key = getKey(parentURI.getScheme(), parentURI.getAuthority(), parentURI.getPath());
+			synchronized (snapshots) {
+				FolderSnapshot snapshot = snapshots.get(key);
+				if (snapshot != null) {
+					snapshot.staleChildren.remove(resource.getName());
+					if (remote)
+						snapshot.serverChildren.put(resource.getName(), readOnly);
+					else
+						snapshot.serverChildren.remove(resource.getName());
+				}
+			}
+		} catch (CoreException e) {
+			logger.debug(e.getMessage(), e);
+		}
+	}
+
+	private void fireLabelProviderChanged(Object[] elements) {
+		final LabelProviderChangedEvent event = new LabelProviderChangedEvent(this, elements);
+		Display display = PlatformUI.getWorkbench().getDisplay();
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				for (Object listener : listeners.getListeners())
+					((ILabelProviderListener) listener).labelProviderChanged(event);
+			}
+		});
+	}
 }
@@ -1,12 +1,16 @@
 package org.apache.hadoop.eclipse.ui.internal.hdfs;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation.Permissions;
+import org.apache.hadoop.eclipse.internal.hdfs.BulkImport;
 import org.apache.hadoop.eclipse.internal.hdfs.HDFSFileStore;
-import org.apache.hadoop.eclipse.internal.hdfs.UploadFileJob;
+import org.apache.hadoop.eclipse.internal.hdfs.TransferScheduler;
 import org.apache.log4j.Logger;
 import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -32,34 +36,51 @@ public class UploadResourceAction implements IObjectActionDelegate {
 	public void run(IAction action) {
 		if (this.selection != null && !this.selection.isEmpty()) {
 			IStructuredSelection sSelection = (IStructuredSelection) this.selection;
+			List<IResource> files = new ArrayList<IResource>();
+			List<IResource> folders = new ArrayList<IResource>();
 			@SuppressWarnings("rawtypes")
 			Iterator itr = sSelection.iterator();
 			while (itr.hasNext()) {
 				Object object = itr.next();
 				if (object instanceof IResource) {
 					IResource r = (IResource) object;
-					uploadResource(r);
+					uploadResource(r, files, folders);
 				}
 			}
+			if (!files.isEmpty() || !folders.isEmpty()) {
+				// A single selected file is waited for, folders are not
+				boolean interactive = sSelection.size() == 1 && sSelection.getFirstElement() instanceof IFile;
+				if (!interactive && (files.isEmpty() || BulkImport.isBulk(files))) {
+					new BulkImport("Importing " + files.size() + " files", files, folders).schedule();
+					return;
+				}
+				String name = interactive ? "Uploading " + files.get(0).getLocationURI() : "Uploading " + files.size() + " files";
+				TransferScheduler.INSTANCE.schedule(name, files, TransferScheduler.Kind.UPLOAD, interactive ? TransferScheduler.Priority.INTERACTIVE
+						: TransferScheduler.Priority.BULK);
+			}
 		}
 	}
 
 	/**
+	 * Collects the files and folders of the resource.
+	 * 
 	 * @param r
+	 * @param files
+	 * @param folders
 	 */
-	private void uploadResource(IResource r) {
+	private void uploadResource(IResource r, List<IResource> files, List<IResource> folders) {
 		try {
 			switch (r.getType()) {
 			case IResource.FILE:
-				UploadFileJob ufj = new UploadFileJob(r);
-				ufj.schedule();
+				files.add(r);
 				break;
 			case IResource.FOLDER:
 				IFolder folder = (IFolder) r;
+				folders.add(folder);
 				IResource[] members = folder.members();
 				if (members != null) {
 					for (int mc = 0; mc < members.length; mc++) {
-						uploadResource(members[mc]);
+						uploadResource(members[mc], files, folders);
 					}
 				}
 			}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.ui.internal.hdfs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Refreshes navigator elements in batches. Elements marked dirty within a
+ * short window are reduced to those which have no dirty ancestor, as
+ * refreshing an element refreshes everything below it. The remaining elements
+ * are refreshed in a single UI runnable, and the labels of their ancestors
+ * are updated once each.
+ */
+class ViewerRefreshScheduler {
+
+	private static final Logger logger = Logger.getLogger(ViewerRefreshScheduler.class);
+	private static final long BATCH_DELAY_MILLIS = 100;
+
+	private final Display display;
+	private volatile StructuredViewer viewer;
+	private final Set<Object> dirtyElements = new LinkedHashSet<Object>();
+	private final Job refreshJob = new Job("Refreshing HDFS resources") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			return refreshDirty(monitor);
+		}
+	};
+
+	ViewerRefreshScheduler(Display display) {
+		this.display = display;
+		refreshJob.setSystem(true);
+		refreshJob.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * @param viewer
+	 *            the viewer to refresh, or <code>null</code> when there is
+	 *            none, in which case dirty elements are dropped
+	 */
+	void setViewer(StructuredViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Marks the element dirty. It is refreshed, together with its children,
+	 * with the next batch. Can be called from any thread.
+	 *
+	 * @param element
+	 *            an {@link IResource} or {@link HDFSFolderPage}
+	 */
+	void refresh(Object element) {
+		synchronized (dirtyElements) {
+			if (!dirtyElements.add(element))
+				return;
+		}
+		refreshJob.schedule(BATCH_DELAY_MILLIS);
+	}
+
+	void dispose() {
+		refreshJob.cancel();
+		synchronized (dirtyElements) {
+			dirtyElements.clear();
+		}
+		viewer = null;
+	}
+
+	private IStatus refreshDirty(IProgressMonitor monitor) {
+		Set<Object> dirty;
+		synchronized (dirtyElements) {
+			dirty = new LinkedHashSet<Object>(dirtyElements);
+			dirtyElements.clear();
+		}
+		if (dirty.isEmpty() || monitor.isCanceled())
+			return Status.OK_STATUS;
+		final List<Object> refreshed = new ArrayList<Object>();
+		Set<Object> ancestors = new LinkedHashSet<Object>();
+		for (Object element : dirty) {
+			if (!hasDirtyAncestor(element, dirty))
+				refreshed.add(element);
+		}
+		for (Object element : refreshed) {
+			Object parent = getParent(element);
+			while (parent != null && ancestors.add(parent))
+				parent = getParent(parent);
+		}
+		final Object[] updated = ancestors.toArray();
+		if (logger.isDebugEnabled())
+			logger.debug("refreshDirty(): " + dirty.size() + " dirty, " + refreshed.size() + " refreshed, " + updated.length + " ancestors");
+		if (display == null || display.isDisposed())
+			return Status.OK_STATUS;
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				StructuredViewer viewer = ViewerRefreshScheduler.this.viewer;
+				if (viewer == null)
+					return;
+				Control control = viewer.getControl();
+				if (control == null || control.isDisposed())
+					return;
+				control.setRedraw(false);
+				try {
+					for (Object element : refreshed)
+						viewer.refresh(element, true);
+					if (updated.length > 0)
+						viewer.update(updated, null);
+				} finally {
+					control.setRedraw(true);
+				}
+			}
+		});
+		return Status.OK_STATUS;
+	}
+
+	private static boolean hasDirtyAncestor(Object element, Set<Object> dirty) {
+		for (Object parent = getParent(element); parent != null; parent = getParent(parent)) {
+			if (dirty.contains(parent))
+				return true;
+		}
+		return false;
+	}
+
+	private static Object getParent(Object element) {
+		if (element instanceof HDFSFolderPage)
+			return ((HDFSFolderPage) element).getParent();
+		if (element instanceof IResource)
+			return ((IResource) element).getParent();
+		return null;
+	}
+}
@@ -19,6 +19,9 @@
 package org.apache.hadoop.eclipse;
 
 import org.apache.hadoop.eclipse.internal.HadoopManager;
+import org.apache.hadoop.eclipse.internal.ServerCallExecutor;
+import org.apache.hadoop.eclipse.internal.hdfs.HDFSManager;
+import org.apache.hadoop.eclipse.internal.hdfs.ReplicationQueue;
 import org.apache.hadoop.eclipse.internal.model.impl.HadoopPackageImpl;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -47,6 +50,7 @@ public class Activator implements BundleActivator {
 		Activator.context = bundleContext;
 		HadoopPackageImpl.init();
 		HadoopManager.INSTANCE.getServers();
+		ReplicationQueue.INSTANCE.load();
 	}
 
 	/*
@@ -57,6 +61,8 @@ public class Activator implements BundleActivator {
 	 */
 	public void stop(BundleContext bundleContext) throws Exception {
 		HadoopManager.INSTANCE.saveServers();
+		HDFSManager.INSTANCE.dispose();
+		ServerCallExecutor.INSTANCE.shutdown();
 		Activator.context = null;
 	}
 
@@ -18,10 +18,12 @@
 
 package org.apache.hadoop.eclipse.hdfs;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -69,6 +71,48 @@ public abstract class HDFSClient {
 	 */
 	public abstract List<ResourceInformation> listResources(URI uri, String user) throws IOException, InterruptedException;
 
+	/**
+	 * Lists the folder one page at a time, so that large folders do not have
+	 * to be fetched in a single call. Clients which can fetch partial listings
+	 * from the server should override this. By default the whole folder is
+	 * listed with {@link #listResources(URI, String)} when the first page is
+	 * asked for.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @param pageSize
+	 *            maximum number of entries in a page
+	 * @return {@link ResourceListing}, which has to be closed
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ResourceListing openListing(final URI uri, final String user, final int pageSize) throws IOException, InterruptedException {
+		return new ResourceListing() {
+			private List<ResourceInformation> resources = null;
+			private int next = 0;
+
+			@Override
+			public List<ResourceInformation> nextPage() throws IOException, InterruptedException {
+				if (resources == null) {
+					resources = listResources(uri, user);
+					if (resources == null)
+						resources = new ArrayList<ResourceInformation>();
+				}
+				if (next >= resources.size())
+					return null;
+				int end = Math.min(resources.size(), next + Math.max(1, pageSize));
+				List<ResourceInformation> page = new ArrayList<ResourceInformation>(resources.subList(next, end));
+				next = end;
+				return page;
+			}
+
+			@Override
+			public void close() throws IOException {
+				resources = null;
+			}
+		};
+	}
+
 	/**
 	 * @param uri
 	 * @param user
@@ -77,6 +121,38 @@ public abstract class HDFSClient {
 	 */
 	public abstract InputStream openInputStream(URI uri, String user) throws IOException, InterruptedException;
 
+	/**
+	 * Opens the file for reading, starting at the given position. Clients
+	 * which can seek on the server should override this. By default the
+	 * stream skips to the position.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @param offset
+	 *            position of the first byte to read
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public InputStream openInputStream(URI uri, String user, long offset) throws IOException, InterruptedException {
+		InputStream in = openInputStream(uri, user);
+		if (in == null)
+			return null;
+		long remaining = offset;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					in.close();
+					throw new EOFException("Unable to skip to " + offset + " in " + uri);
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		return in;
+	}
+
 	/**
 	 * 
 	 * @param uri
@@ -105,10 +181,131 @@ public abstract class HDFSClient {
 	 */
 	public abstract OutputStream createOutputStream(URI uri, String user) throws IOException, InterruptedException;
 
+	/**
+	 * Creates the file with the buffer size, replication and block size of
+	 * the options. Clients which support them should override this. By
+	 * default the options are ignored.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @param options
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public OutputStream createOutputStream(URI uri, String user, UploadOptions options) throws IOException, InterruptedException {
+		return createOutputStream(uri, user);
+	}
+
+	/**
+	 * Renames the resource on the server, without copying its content. Both
+	 * URIs must be on the same server. Clients which can rename should
+	 * override this. By default nothing is renamed.
+	 * 
+	 * @param uri
+	 * @param destination
+	 * @param user
+	 * @return <code>true</code> when renamed
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public boolean rename(URI uri, URI destination, String user) throws IOException, InterruptedException {
+		return false;
+	}
+
+	/**
+	 * Changes the number of replicas of the file's blocks. By default an
+	 * {@link IOException} is thrown.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @param replication
+	 *            0 for the default of the server
+	 * @return <code>true</code> when changed
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public boolean setReplication(URI uri, String user, short replication) throws IOException, InterruptedException {
+		throw new IOException("Changing replication is not supported by " + getClass().getName());
+	}
+
+	/**
+	 * @param uri
+	 * @param user
+	 * @return the replication of new files on the server, or 0 when not
+	 *         known
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public short getDefaultReplication(URI uri, String user) throws IOException, InterruptedException {
+		return 0;
+	}
+
+	/**
+	 * @param uri
+	 * @param user
+	 * @return the least number of replicas held of any block of the file, or
+	 *         -1 when not known
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public int getMinReplicas(URI uri, String user) throws IOException, InterruptedException {
+		return -1;
+	}
+
+	/**
+	 * Opens an existing file for writing at its end. Clients which support
+	 * appending should override this. By default an {@link IOException} is
+	 * thrown.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public OutputStream appendOutputStream(URI uri, String user) throws IOException, InterruptedException {
+		throw new IOException("Appending is not supported: " + uri);
+	}
+
 	/**
 	 * @param uri
 	 * @param user
 	 * @throws InterruptedException 
 	 */
 	public abstract void delete(URI uri, String user) throws IOException, InterruptedException;
+
+	/**
+	 * Provides the checksum of the server file, so that it can be compared
+	 * with local files without transferring it. Clients which can fetch
+	 * checksums from the server should override this.
+	 * 
+	 * @param uri
+	 * @param user
+	 * @return the checksum, or <code>null</code> when not available
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ResourceChecksum getFileChecksum(URI uri, String user) throws IOException, InterruptedException {
+		return null;
+	}
+
+	/**
+	 * Releases connections and other resources held for the server. Called
+	 * when the server is disconnected or deleted. The client reconnects on
+	 * its next use.
+	 * 
+	 * @param uri
+	 *            server URI
+	 * @throws IOException
+	 */
+	public void disconnect(URI uri) throws IOException {
+	}
+
+	/**
+	 * Releases resources shared by all servers of this client, such as
+	 * background threads. Called when the plugin stops.
+	 */
+	public void dispose() {
+	}
 }
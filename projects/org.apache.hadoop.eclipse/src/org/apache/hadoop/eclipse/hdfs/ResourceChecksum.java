@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.hdfs;
+
+import java.util.Arrays;
+
+/**
+ * Checksum of a server file, computed as the MD5 of the MD5s of the CRC32
+ * checksums of each block, as HDFS does.
+ */
+public class ResourceChecksum {
+	private final int bytesPerCrc;
+	private final long crcPerBlock;
+	private final byte[] md5;
+
+	/**
+	 * @param bytesPerCrc
+	 *            bytes covered by each CRC32
+	 * @param crcPerBlock
+	 *            CRC32s per block, or 0 when the file has a single block
+	 * @param md5
+	 */
+	public ResourceChecksum(int bytesPerCrc, long crcPerBlock, byte[] md5) {
+		this.bytesPerCrc = bytesPerCrc;
+		this.crcPerBlock = crcPerBlock;
+		this.md5 = md5.clone();
+	}
+
+	public int getBytesPerCrc() {
+		return bytesPerCrc;
+	}
+
+	public long getCrcPerBlock() {
+		return crcPerBlock;
+	}
+
+	public byte[] getMd5() {
+		return md5.clone();
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(md5);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ResourceChecksum))
+			return false;
+		ResourceChecksum other = (ResourceChecksum) obj;
+		return bytesPerCrc == other.bytesPerCrc && crcPerBlock == other.crcPerBlock && Arrays.equals(md5, other.md5);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("MD5-of-" + crcPerBlock + "MD5-of-" + bytesPerCrc + "CRC32:");
+		for (byte b : md5)
+			sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		return sb.toString();
+	}
+}
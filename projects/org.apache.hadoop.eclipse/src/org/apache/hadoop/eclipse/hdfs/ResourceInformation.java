@@ -18,7 +18,7 @@
 
 package org.apache.hadoop.eclipse.hdfs;
 
-import java.util.List;
+import java.util.Collection;
 
 public class ResourceInformation {
 	public static class Permissions {
@@ -56,6 +56,30 @@ public class ResourceInformation {
 	private Permissions otherPermissions = new Permissions();
 	private Permissions effectivePermissions = new Permissions();
 
+	public ResourceInformation() {
+	}
+
+	/**
+	 * Creates a copy which can be changed independently of the original.
+	 * 
+	 * @param copyFrom
+	 */
+	public ResourceInformation(ResourceInformation copyFrom) {
+		this.name = copyFrom.name;
+		this.path = copyFrom.path;
+		this.lastModifiedTime = copyFrom.lastModifiedTime;
+		this.lastAccessedTime = copyFrom.lastAccessedTime;
+		this.isFolder = copyFrom.isFolder;
+		this.size = copyFrom.size;
+		this.replicationFactor = copyFrom.replicationFactor;
+		this.owner = copyFrom.owner;
+		this.group = copyFrom.group;
+		this.userPermissions.copy(copyFrom.userPermissions);
+		this.groupPermissions.copy(copyFrom.groupPermissions);
+		this.otherPermissions.copy(copyFrom.otherPermissions);
+		this.effectivePermissions.copy(copyFrom.effectivePermissions);
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -196,7 +220,7 @@ public class ResourceInformation {
 	 * @param user
 	 * @param groups
 	 */
-	public void updateEffectivePermissions(String user, List<String> groups) {
+	public void updateEffectivePermissions(String user, Collection<String> groups) {
 		if (user != null) {
 			if (getOwner().equals(user)) {
 				// Owner permissions apply
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.hdfs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Listing of a folder which is fetched from the server one page at a time.
+ * Obtained from {@link HDFSClient#openListing(java.net.URI, String, int)}, and
+ * has to be closed when no longer needed.
+ */
+public interface ResourceListing {
+
+	/**
+	 * Fetches the next entries of the folder.
+	 * 
+	 * @return next entries, or <code>null</code> when all entries have been
+	 *         provided
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public List<ResourceInformation> nextPage() throws IOException, InterruptedException;
+
+	/**
+	 * Releases the resources held by this listing.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.internal;
+
+import org.apache.hadoop.eclipse.Activator;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+
+/**
+ * Tuning values for the Hadoop plugins. Values are looked up in the
+ * <code>org.apache.hadoop.eclipse</code> preference node, so they can be
+ * provided through <code>plugin_customization.ini</code> or the workspace
+ * preferences. Defaults apply when nothing is set, or when the platform is not
+ * running.
+ */
+public class HadoopPreferences {
+
+	/**
+	 * Number of worker threads shared by all server calls.
+	 */
+	public static final String SERVER_CALL_THREADS = "serverCallThreads";
+	/**
+	 * Maximum number of calls running concurrently against a single server.
+	 */
+	public static final String SERVER_CALL_LIMIT = "serverCallLimit";
+	/**
+	 * Maximum number of calls waiting for a worker for a single server.
+	 */
+	public static final String SERVER_CALL_QUEUE_LIMIT = "serverCallQueueLimit";
+	/**
+	 * Milliseconds a call may wait for a worker before it fails. Waiting does
+	 * not count towards the timeout of the call.
+	 */
+	public static final String SERVER_CALL_QUEUE_TIMEOUT = "serverCallQueueTimeout";
+	/**
+	 * Milliseconds after which an unused HDFS connection is closed.
+	 */
+	public static final String HDFS_CONNECTION_IDLE_TIMEOUT = "hdfsConnectionIdleTimeout";
+	/**
+	 * Milliseconds for which HDFS resource information is cached.
+	 */
+	public static final String HDFS_METADATA_CACHE_TTL = "hdfsMetadataCacheTTL";
+	/**
+	 * Maximum number of HDFS resources cached per server.
+	 */
+	public static final String HDFS_METADATA_CACHE_ENTRIES = "hdfsMetadataCacheEntries";
+	/**
+	 * Maximum estimated bytes of HDFS resource information cached per server.
+	 */
+	public static final String HDFS_METADATA_CACHE_MEMORY = "hdfsMetadataCacheMemory";
+	/**
+	 * Milliseconds for which HDFS resources are remembered as not existing.
+	 */
+	public static final String HDFS_METADATA_CACHE_NEGATIVE_TTL = "hdfsMetadataCacheNegativeTTL";
+	/**
+	 * Milliseconds after which the default user and groups of an HDFS server
+	 * are looked up again.
+	 */
+	public static final String HDFS_IDENTITY_CACHE_TTL = "hdfsIdentityCacheTTL";
+	/**
+	 * Comma separated names of Eclipse metadata resources which are kept only
+	 * in the workspace of HDFS projects. <code>*</code> matches any
+	 * characters.
+	 */
+	public static final String HDFS_LOCAL_METADATA_NAMES = "hdfsLocalMetadataNames";
+	/**
+	 * Number of entries fetched from the server per page when listing HDFS
+	 * folders.
+	 */
+	public static final String HDFS_LIST_PAGE_SIZE = "hdfsListPageSize";
+	/**
+	 * Bytes of a file fetched by a single stream when downloading large HDFS
+	 * files in ranges.
+	 */
+	public static final String HDFS_DOWNLOAD_CHUNK_SIZE = "hdfsDownloadChunkSize";
+	/**
+	 * Maximum number of streams fetching ranges of a single HDFS file
+	 * concurrently.
+	 */
+	public static final String HDFS_DOWNLOAD_PARALLELISM = "hdfsDownloadParallelism";
+	/**
+	 * Maximum number of streams fetching ranges of all HDFS downloads
+	 * together.
+	 */
+	public static final String HDFS_DOWNLOAD_MAX_STREAMS = "hdfsDownloadMaxStreams";
+	/**
+	 * Maximum number of file downloads and uploads running concurrently.
+	 */
+	public static final String TRANSFER_LIMIT = "transferLimit";
+	/**
+	 * Maximum number of file downloads and uploads running concurrently
+	 * against a single server.
+	 */
+	public static final String TRANSFER_SERVER_LIMIT = "transferServerLimit";
+	/**
+	 * Bytes per second allowed for all file transfers together. 0 for no
+	 * limit.
+	 */
+	public static final String TRANSFER_RATE_LIMIT = "transferRateLimit";
+	/**
+	 * Bytes per second allowed for all file transfers of a single server. 0
+	 * for no limit.
+	 */
+	public static final String TRANSFER_SERVER_RATE_LIMIT = "transferServerRateLimit";
+	/**
+	 * Bytes per second allowed for a single file transfer. 0 for no limit.
+	 */
+	public static final String TRANSFER_FILE_RATE_LIMIT = "transferFileRateLimit";
+	/**
+	 * Bytes of the direct buffers used to copy file transfers.
+	 */
+	public static final String TRANSFER_BUFFER_SIZE = "transferBufferSize";
+	/**
+	 * Maximum number of released transfer buffers kept for reuse.
+	 */
+	public static final String TRANSFER_BUFFER_POOL_SIZE = "transferBufferPoolSize";
+	/**
+	 * Number of transfer buffers an upload reads ahead of the data written
+	 * to the server.
+	 */
+	public static final String UPLOAD_READ_AHEAD = "uploadReadAhead";
+	/**
+	 * Whether large files are uploaded with a single replica and raised to
+	 * their target replication in the background once written.
+	 */
+	public static final String UPLOAD_FAST_INGEST = "uploadFastIngest";
+	/**
+	 * Bytes from which files are uploaded in fast ingest mode.
+	 */
+	public static final String UPLOAD_FAST_INGEST_THRESHOLD = "uploadFastIngestThreshold";
+	/**
+	 * Block size of files uploaded in fast ingest mode. 0 for the server
+	 * default.
+	 */
+	public static final String UPLOAD_FAST_INGEST_BLOCK_SIZE = "uploadFastIngestBlockSize";
+	/**
+	 * Replication raised to after a fast ingest upload. 0 for the server
+	 * default.
+	 */
+	public static final String UPLOAD_TARGET_REPLICATION = "uploadTargetReplication";
+	/**
+	 * Number of files from which an upload of small files runs as a bulk
+	 * import.
+	 */
+	public static final String BULK_IMPORT_MIN_FILES = "bulkImportMinFiles";
+	/**
+	 * Average file size up to which an upload of many files runs as a bulk
+	 * import.
+	 */
+	public static final String BULK_IMPORT_MAX_AVERAGE_SIZE = "bulkImportMaxAverageSize";
+	/**
+	 * Maximum number of files a bulk import uploads concurrently.
+	 */
+	public static final String BULK_IMPORT_MAX_CONCURRENCY = "bulkImportMaxConcurrency";
+	/**
+	 * Number of children of an HDFS folder above which the navigator shows
+	 * them in pages.
+	 */
+	public static final String NAVIGATOR_PAGE_THRESHOLD = "navigatorPageThreshold";
+	/**
+	 * Number of children of an HDFS folder shown per page in the navigator.
+	 */
+	public static final String NAVIGATOR_PAGE_SIZE = "navigatorPageSize";
+	/**
+	 * Milliseconds after which the navigator lists a folder again to update
+	 * the decorations of its children.
+	 */
+	public static final String NAVIGATOR_DECORATION_TTL = "navigatorDecorationTTL";
+
+	private HadoopPreferences() {
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		IPreferencesService service = getService();
+		if (service == null)
+			return defaultValue;
+		return service.getInt(Activator.BUNDLE_ID, key, defaultValue, null);
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		IPreferencesService service = getService();
+		if (service == null)
+			return defaultValue;
+		return service.getLong(Activator.BUNDLE_ID, key, defaultValue, null);
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		IPreferencesService service = getService();
+		if (service == null)
+			return defaultValue;
+		return service.getBoolean(Activator.BUNDLE_ID, key, defaultValue, null);
+	}
+
+	public static String getString(String key, String defaultValue) {
+		IPreferencesService service = getService();
+		if (service == null)
+			return defaultValue;
+		return service.getString(Activator.BUNDLE_ID, key, defaultValue, null);
+	}
+
+	private static IPreferencesService getService() {
+		if (!Platform.isRunning())
+			return null;
+		return Platform.getPreferencesService();
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.internal;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs server calls on a shared, bounded pool of named worker threads instead
+ * of a new thread per call.
+ * <p>
+ * Every server gets its own lane. At most {@link #getMaxCallsPerServer()}
+ * calls of a server run at the same time; further calls wait in the lane's
+ * queue, so a single slow server cannot occupy all workers. Callers wait on
+ * the returned {@link Future}. The timeout of a call starts when a worker
+ * starts running it, so time spent waiting in the lane does not count as the
+ * server being slow. A call which times out is cancelled, which interrupts the
+ * worker running it. Its slot in the lane stays taken until the worker
+ * actually returns, as server clients may ignore the interrupt, so a server
+ * which does not respond holds at most its own slots of the shared workers.
+ */
+public class ServerCallExecutor {
+
+	private static final Logger logger = Logger.getLogger(ServerCallExecutor.class);
+	private static final int DEFAULT_THREADS = 16;
+	private static final int DEFAULT_CALLS_PER_SERVER = 8;
+	private static final int DEFAULT_QUEUED_CALLS_PER_SERVER = 1024;
+	private static final int DEFAULT_QUEUE_TIMEOUT = 60000;
+	private static final long IDLE_THREAD_KEEPALIVE_SECONDS = 60;
+
+	public static ServerCallExecutor INSTANCE = new ServerCallExecutor(HadoopPreferences.getInt(HadoopPreferences.SERVER_CALL_THREADS, DEFAULT_THREADS),
+			HadoopPreferences.getInt(HadoopPreferences.SERVER_CALL_LIMIT, DEFAULT_CALLS_PER_SERVER), HadoopPreferences.getInt(
+					HadoopPreferences.SERVER_CALL_QUEUE_LIMIT, DEFAULT_QUEUED_CALLS_PER_SERVER), HadoopPreferences.getInt(
+			HadoopPreferences.SERVER_CALL_QUEUE_TIMEOUT, DEFAULT_QUEUE_TIMEOUT));
+
+	private final ThreadPoolExecutor pool;
+	private final int maxCallsPerServer;
+	private final int maxQueuedCallsPerServer;
+	private final long queueTimeoutMillis;
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	private final AtomicLong submittedCalls = new AtomicLong();
+	private final AtomicLong completedCalls = new AtomicLong();
+	private final AtomicLong timedOutCalls = new AtomicLong();
+	private final AtomicLong queueTimedOutCalls = new AtomicLong();
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	public ServerCallExecutor(int threads, int maxCallsPerServer, int maxQueuedCallsPerServer, long queueTimeoutMillis) {
+		this.maxCallsPerServer = Math.max(1, maxCallsPerServer);
+		this.maxQueuedCallsPerServer = Math.max(1, maxQueuedCallsPerServer);
+		this.queueTimeoutMillis = Math.max(1, queueTimeoutMillis);
+		threads = Math.max(1, threads);
+		// Work only reaches the pool when a lane has a free slot, so its own
+		// queue is bounded by the per-server limits.
+		this.pool = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_KEEPALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Hadoop server call #" + threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues the call on the lane of the given server.
+	 *
+	 * @param serverURI
+	 * @param callable
+	 * @return {@link Future} of the call
+	 * @throws IOException
+	 *             when too many calls are already waiting for this server
+	 */
+	public <T> Future<T> submit(String serverURI, Callable<T> callable) throws IOException {
+		Lane lane = getLane(serverURI);
+		Call<T> call = new Call<T>(lane, callable);
+		lane.enqueue(call);
+		submittedCalls.incrementAndGet();
+		return call;
+	}
+
+	/**
+	 * Waits for the call to finish. A call which does not finish within the
+	 * timeout after a worker started running it is cancelled. A call which
+	 * waits in its lane for longer than the queue timeout is cancelled too,
+	 * but that is reported as an {@link IOException}, as it does not mean that
+	 * the server is unresponsive.
+	 *
+	 * @param future
+	 *            returned by {@link #submit(String, Callable)}
+	 * @param timeoutMillis
+	 * @return result of the call
+	 * @throws IOException
+	 *             thrown by the call, or when it waited too long for a worker
+	 * @throws InterruptedException
+	 *             when the caller was interrupted, or the call was cancelled
+	 * @throws TimeoutException
+	 *             when the call did not finish in time
+	 */
+	public <T> T get(Future<T> future, long timeoutMillis) throws IOException, InterruptedException, TimeoutException {
+		final long waitStarted = System.currentTimeMillis();
+		try {
+			while (true) {
+				long now = System.currentTimeMillis();
+				long started = future instanceof Call ? ((Call<?>) future).getStartedMillis() : waitStarted;
+				long waitMillis;
+				if (started > 0) {
+					waitMillis = started + timeoutMillis - now;
+					if (waitMillis <= 0) {
+						future.cancel(true);
+						timedOutCalls.incrementAndGet();
+						throw new TimeoutException();
+					}
+				} else if (now - waitStarted >= queueTimeoutMillis) {
+					future.cancel(true);
+					queueTimedOutCalls.incrementAndGet();
+					throw new IOException("Server call waited more than " + queueTimeoutMillis + "ms for a worker");
+				} else {
+					// Not running yet. Look again once it could have timed out.
+					waitMillis = Math.min(timeoutMillis, waitStarted + queueTimeoutMillis - now);
+				}
+				try {
+					return future.get(waitMillis, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// Checked against the start of the call above
+				}
+			}
+		} catch (CancellationException e) {
+			throw new InterruptedException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof InterruptedException)
+				throw (InterruptedException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private Lane getLane(String serverURI) {
+		String key = serverURI == null ? "" : serverURI;
+		Lane lane = lanes.get(key);
+		if (lane == null) {
+			Lane newLane = new Lane(key);
+			lane = lanes.putIfAbsent(key, newLane);
+			if (lane == null)
+				lane = newLane;
+		}
+		return lane;
+	}
+
+	public int getMaxCallsPerServer() {
+		return maxCallsPerServer;
+	}
+
+	/**
+	 * @param serverURI
+	 * @return number of calls of the server waiting for a worker
+	 */
+	public int getQueueDepth(String serverURI) {
+		Lane lane = lanes.get(serverURI == null ? "" : serverURI);
+		return lane == null ? 0 : lane.getQueueDepth();
+	}
+
+	/**
+	 * @param serverURI
+	 * @return number of calls of the server currently running
+	 */
+	public int getRunningCalls(String serverURI) {
+		Lane lane = lanes.get(serverURI == null ? "" : serverURI);
+		return lane == null ? 0 : lane.getRunning();
+	}
+
+	/**
+	 * @return number of calls of all servers waiting for a worker
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Lane lane : lanes.values())
+			depth += lane.getQueueDepth();
+		return depth;
+	}
+
+	public int getActiveThreads() {
+		return pool.getActiveCount();
+	}
+
+	public long getSubmittedCalls() {
+		return submittedCalls.get();
+	}
+
+	public long getCompletedCalls() {
+		return completedCalls.get();
+	}
+
+	public long getTimedOutCalls() {
+		return timedOutCalls.get();
+	}
+
+	/**
+	 * @return number of calls cancelled because they waited too long for a
+	 *         worker
+	 */
+	public long getQueueTimedOutCalls() {
+		return queueTimedOutCalls.get();
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	/**
+	 * Fails the calls of the server which are waiting for a worker, such as
+	 * when it is disconnected. Running calls are left to time out.
+	 *
+	 * @param serverURI
+	 * @param cause
+	 *            thrown to the callers
+	 * @return number of calls failed
+	 */
+	public int failPending(String serverURI, IOException cause) {
+		Lane lane = lanes.get(serverURI == null ? "" : serverURI);
+		return lane == null ? 0 : lane.failPending(cause);
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * A call which knows when a worker started running it, and which frees its
+	 * slot in the lane once the worker returns from it.
+	 */
+	private static class Call<T> extends FutureTask<T> {
+		private final Lane lane;
+		private volatile long startedMillis = 0;
+
+		Call(Lane lane, Callable<T> callable) {
+			super(callable);
+			this.lane = lane;
+		}
+
+		/**
+		 * @return when a worker started running the call, or 0 while it is
+		 *         waiting in its lane
+		 */
+		long getStartedMillis() {
+			return startedMillis;
+		}
+
+		@Override
+		public void run() {
+			startedMillis = System.currentTimeMillis();
+			try {
+				super.run();
+			} finally {
+				lane.callDone();
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled() && startedMillis == 0)
+				lane.remove(this);
+		}
+
+		void fail(Throwable cause) {
+			setException(cause);
+		}
+	}
+
+	/**
+	 * Queue of calls to one server.
+	 */
+	private class Lane {
+		private final String serverURI;
+		private final LinkedList<Call<?>> pending = new LinkedList<Call<?>>();
+		private int running = 0;
+
+		Lane(String serverURI) {
+			this.serverURI = serverURI;
+		}
+
+		synchronized void enqueue(Call<?> task) throws IOException {
+			if (pending.size() >= maxQueuedCallsPerServer) {
+				rejectedCalls.incrementAndGet();
+				throw new IOException("Too many pending calls to server " + serverURI);
+			}
+			pending.add(task);
+			dispatch();
+		}
+
+		private void dispatch() {
+			while (running < maxCallsPerServer && !pending.isEmpty()) {
+				Call<?> task = pending.removeFirst();
+				if (task.isCancelled())
+					continue;
+				running++;
+				try {
+					pool.execute(task);
+				} catch (RejectedExecutionException e) {
+					running--;
+					task.cancel(false);
+					logger.warn("Server call rejected for " + serverURI, e);
+				}
+			}
+			if (logger.isDebugEnabled() && !pending.isEmpty())
+				logger.debug("dispatch(): " + pending.size() + " calls waiting for " + serverURI);
+		}
+
+		/**
+		 * Drops a call cancelled while waiting.
+		 */
+		synchronized void remove(Call<?> task) {
+			pending.remove(task);
+		}
+
+		synchronized int failPending(IOException cause) {
+			int failed = pending.size();
+			for (Call<?> task : pending)
+				task.fail(cause);
+			pending.clear();
+			if (logger.isDebugEnabled() && failed > 0)
+				logger.debug("failPending(): " + failed + " calls failed for " + serverURI);
+			return failed;
+		}
+
+		synchronized void callDone() {
+			running--;
+			completedCalls.incrementAndGet();
+			dispatch();
+		}
+
+		synchronized int getQueueDepth() {
+			return pending.size();
+		}
+
+		synchronized int getRunning() {
+			return running;
+		}
+	}
+}
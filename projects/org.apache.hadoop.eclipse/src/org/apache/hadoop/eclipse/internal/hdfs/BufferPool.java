@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+
+/**
+ * Direct buffers shared by file transfers. Direct buffers are written to and
+ * read from file channels without an intermediate copy, but are expensive to
+ * allocate, so released buffers are kept for the next transfer, up to a
+ * maximum number.
+ */
+public class BufferPool {
+
+	private static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+	private static final int DEFAULT_POOL_SIZE = 32;
+
+	public static BufferPool INSTANCE = new BufferPool(HadoopPreferences.getInt(HadoopPreferences.TRANSFER_BUFFER_SIZE, DEFAULT_BUFFER_SIZE),
+			HadoopPreferences.getInt(HadoopPreferences.TRANSFER_BUFFER_POOL_SIZE, DEFAULT_POOL_SIZE));
+
+	private final int bufferSize;
+	private final int maxPooled;
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = Math.max(4096, bufferSize);
+		this.maxPooled = Math.max(0, maxPooled);
+	}
+
+	/**
+	 * @return a cleared buffer, which has to be released after use
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null)
+			return ByteBuffer.allocateDirect(bufferSize);
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns the buffer to the pool. It must not be used afterwards.
+	 *
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize)
+			return;
+		if (pooled.incrementAndGet() <= maxPooled)
+			buffers.offer(buffer);
+		else
+			pooled.decrementAndGet();
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Reads from the channel until the buffer is full or the channel ends.
+	 * Channels over streams read only a few kilobytes per call.
+	 *
+	 * @param channel
+	 * @param buffer
+	 * @return number of bytes read, or -1 when the channel ended before any
+	 * @throws IOException
+	 */
+	public static int readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer);
+			if (read < 0)
+				return total == 0 ? -1 : total;
+			total += read;
+		}
+		return total;
+	}
+}
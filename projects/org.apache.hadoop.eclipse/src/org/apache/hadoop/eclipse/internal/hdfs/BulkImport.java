@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.eclipse.Activator;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.log4j.Logger;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Uploads many small files, where the time per file goes to server calls
+ * rather than to data. All folders are created first, with one
+ * <code>mkdirs</code> per deepest folder. Files are then uploaded with
+ * {@link UploadFileJob} on as many threads as the server handles well: the
+ * number grows by one for every round of files completing in time, and halves
+ * when uploads fail or their server calls take much longer than the fastest
+ * seen. Every upload also takes a slot of the {@link TransferScheduler}, so
+ * that imports and scheduled transfers together stay within its limits.
+ */
+public class BulkImport extends Job {
+
+	private static final Logger logger = Logger.getLogger(BulkImport.class);
+	private static final int DEFAULT_MAX_CONCURRENCY = 16;
+	private static final long PROGRESS_INTERVAL_MILLIS = 200;
+
+	private final List<IResource> files;
+	private final List<IResource> folders;
+
+	/**
+	 * @param name
+	 * @param files
+	 *            files to upload
+	 * @param folders
+	 *            folders to create, including empty ones. Parents of the
+	 *            files need not be included.
+	 */
+	public BulkImport(String name, List<IResource> files, List<IResource> folders) {
+		super(name);
+		this.files = files;
+		this.folders = folders;
+		setPriority(Job.LONG);
+	}
+
+	/**
+	 * @param files
+	 * @return <code>true</code> when the files are many and small enough to
+	 *         be uploaded as a bulk import
+	 */
+	public static boolean isBulk(List<IResource> files) {
+		if (files.size() < HadoopPreferences.getInt(HadoopPreferences.BULK_IMPORT_MIN_FILES, 50))
+			return false;
+		long total = 0;
+		for (IResource file : files) {
+			URI uri = file.getLocationURI();
+			try {
+				if (uri != null)
+					total += ((HDFSFileStore) EFS.getStore(uri)).getLocalFile().length();
+			} catch (CoreException e) {
+				return false;
+			}
+		}
+		return total / files.size() <= HadoopPreferences.getLong(HadoopPreferences.BULK_IMPORT_MAX_AVERAGE_SIZE, 1024 * 1024);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		MultiStatus status = new MultiStatus(Activator.BUNDLE_ID, IStatus.OK, "Errors importing files", null);
+		List<URI> dirs = getDeepestFolders();
+		monitor.beginTask(getName(), dirs.size() + files.size());
+		try {
+			for (URI dir : dirs) {
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+				monitor.subTask("Creating " + dir.getPath());
+				try {
+					((HDFSFileStore) EFS.getStore(dir)).mkdir(EFS.NONE, new NullProgressMonitor());
+				} catch (CoreException e) {
+					status.add(e.getStatus());
+				}
+				monitor.worked(1);
+			}
+			if (!uploadFiles(monitor, status))
+				return Status.CANCEL_STATUS;
+		} finally {
+			monitor.done();
+		}
+		return status.getChildren().length == 0 ? Status.OK_STATUS : status;
+	}
+
+	/**
+	 * Folders of the files and the given folders, without those created
+	 * along with a deeper one.
+	 */
+	private List<URI> getDeepestFolders() {
+		TreeSet<String> paths = new TreeSet<String>();
+		for (IResource file : files) {
+			URI uri = file.getParent() == null ? null : file.getParent().getLocationURI();
+			if (uri != null)
+				paths.add(uri.toString());
+		}
+		for (IResource folder : folders) {
+			URI uri = folder.getLocationURI();
+			if (uri != null)
+				paths.add(uri.toString());
+		}
+		List<URI> deepest = new ArrayList<URI>();
+		for (String path : paths) {
+			String prefix = path.endsWith("/") ? path : path + "/";
+			String next = paths.ceiling(prefix);
+			if (next == null || !next.startsWith(prefix))
+				deepest.add(URI.create(path));
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("getDeepestFolders(): " + deepest.size() + " of " + paths.size() + " folders");
+		return deepest;
+	}
+
+	/**
+	 * @return <code>false</code> when cancelled
+	 */
+	private boolean uploadFiles(final IProgressMonitor monitor, MultiStatus status) {
+		final int maxConcurrency = Math.max(1, HadoopPreferences.getInt(HadoopPreferences.BULK_IMPORT_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY));
+		ExecutorService executor = Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "HDFS import " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService<Result> completed = new ExecutorCompletionService<Result>(executor);
+		final IProgressMonitor fileMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+		ConcurrencyController controller = new ConcurrencyController(maxConcurrency);
+		long start = System.nanoTime();
+		long shown = 0;
+		int next = 0, running = 0, done = 0;
+		try {
+			while (done < files.size()) {
+				if (monitor.isCanceled())
+					return false;
+				while (next < files.size() && running < controller.getLimit() && TransferScheduler.INSTANCE.tryStart(files.get(next))) {
+					final IResource file = files.get(next++);
+					completed.submit(new Callable<Result>() {
+						@Override
+						public Result call() throws Exception {
+							try {
+								UploadFileJob job = new UploadFileJob(file);
+								IStatus result = job.run(fileMonitor);
+								return new Result(result, job.getServerCallNanos());
+							} finally {
+								TransferScheduler.INSTANCE.finished(file);
+							}
+						}
+					});
+					running++;
+				}
+				Future<Result> future = completed.poll(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				while (future != null) {
+					running--;
+					done++;
+					monitor.worked(1);
+					IStatus result;
+					long latency = 0;
+					try {
+						Result r = future.get();
+						result = r.status;
+						latency = r.nanos;
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						if (cause instanceof CoreException)
+							result = ((CoreException) cause).getStatus();
+						else
+							result = new Status(IStatus.ERROR, Activator.BUNDLE_ID, cause.getMessage(), cause);
+					}
+					if (result.getSeverity() == IStatus.ERROR) {
+						status.add(result);
+						controller.failed();
+					} else if (latency > 0) {
+						// Skipped uploads made no calls to measure
+						controller.succeeded(latency);
+					}
+					future = completed.poll();
+				}
+				if (System.currentTimeMillis() - shown >= PROGRESS_INTERVAL_MILLIS) {
+					shown = System.currentTimeMillis();
+					monitor.subTask(done + " of " + files.size() + " files, " + String.format("%.1f", getFilesPerSecond(done, start))
+							+ " files/s, " + running + " concurrent");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			executor.shutdown();
+		}
+		logger.info("Imported " + done + " files in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s ("
+				+ String.format("%.1f", getFilesPerSecond(done, start)) + " files/s)");
+		return true;
+	}
+
+	private static double getFilesPerSecond(int files, long startNanos) {
+		long elapsed = System.nanoTime() - startNanos;
+		return elapsed <= 0 ? 0 : files * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	private static class Result {
+		private final IStatus status;
+		private final long nanos;
+
+		Result(IStatus status, long nanos) {
+			this.status = status;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * Additive increase, multiplicative decrease of the number of concurrent
+	 * uploads. The limit grows by one for every limit's worth of uploads
+	 * completing within twice the baseline latency, and halves at most once
+	 * per limit's worth of uploads when one fails or is slower. Latencies are
+	 * those of the server calls of an upload, which do not depend on the size
+	 * of the file.
+	 */
+	static class ConcurrencyController {
+		private static final double INITIAL_LIMIT = 2;
+		private static final double LATENCY_FACTOR = 2;
+		private static final double BASELINE_DRIFT = 0.01;
+
+		private final int maxLimit;
+		private double limit;
+		private double baseline = 0;
+		private int sinceDecrease = 0;
+
+		ConcurrencyController(int maxLimit) {
+			this.maxLimit = maxLimit;
+			this.limit = Math.min(INITIAL_LIMIT, maxLimit);
+		}
+
+		int getLimit() {
+			return (int) limit;
+		}
+
+		void succeeded(long nanos) {
+			sinceDecrease++;
+			// Follows the fastest latency, drifting up slowly in case the
+			// server became slower for everyone
+			if (baseline == 0 || nanos < baseline)
+				baseline = nanos;
+			else
+				baseline += (nanos - baseline) * BASELINE_DRIFT;
+			if (nanos > baseline * LATENCY_FACTOR)
+				decrease();
+			else
+				limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+
+		void failed() {
+			sinceDecrease++;
+			decrease();
+		}
+
+		private void decrease() {
+			if (sinceDecrease < limit)
+				return;
+			limit = Math.max(1, limit / 2);
+			sinceDecrease = 0;
+		}
+	}
+}
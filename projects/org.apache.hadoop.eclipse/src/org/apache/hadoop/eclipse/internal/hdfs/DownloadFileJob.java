@@ -19,9 +19,7 @@ package org.apache.hadoop.eclipse.internal.hdfs;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 
 import org.apache.hadoop.eclipse.Activator;
@@ -73,46 +71,24 @@ public class DownloadFileJob extends Job {
 				if (logger.isDebugEnabled())
 					logger.debug("[" + uri + "]: Downloading to " + (localFile == null ? "(null)" : localFile.toString()));
 				HDFSManager.INSTANCE.startServerOperation(uri.toString());
-				final IFileInfo serverInfo = store.fetchInfo();
+				// The server file may have changed or been deleted since it
+				// was listed, and a local copy must not stand in for it
+				store.clearServerFileInfo();
+				final IFileInfo serverInfo = store.fetchServerInfo();
 				if (serverInfo.exists()) {
-					monitor.beginTask("Downloading " + uri.toString(), (int) serverInfo.getLength());
-					if (!localFile.exists()) {
+					if (!localFile.exists())
 						localFile.getParentFile().mkdirs();
-						localFile.createNewFile();
-					}
-					InputStream openInputStream = store.openRemoteInputStream(EFS.NONE, new NullProgressMonitor());
-					FileOutputStream fos = new FileOutputStream(localFile);
-					try {
-						if (!monitor.isCanceled()) {
-							byte[] data = new byte[8 * 1024];
-							int totalRead = 0;
-							int read = openInputStream.read(data);
-							while (read > -1) {
-								if (monitor.isCanceled())
-									throw new InterruptedException();
-								fos.write(data, 0, read);
-								totalRead += read;
-								monitor.worked(read);
-								read = openInputStream.read(data);
-								if (logger.isDebugEnabled())
-									logger.debug("Downloaded " + totalRead + " out of " + serverInfo.getLength() + " [" + (((float)totalRead*100.0f) / (float)serverInfo.getLength())
-											+ "]");
-							}
-						}
-					} catch (IOException e) {
-						throw e;
-					} catch (InterruptedException e) {
-						throw e;
-					} finally {
-						try {
-							openInputStream.close();
-						} catch (Throwable t) {
-						}
+					if (LocalChecksum.isSameContent(store, localFile)) {
+						if (logger.isDebugEnabled())
+							logger.debug("[" + uri + "]: Local file has the same content, skipping download");
+						store.clearLocalFileInfo();
+					} else {
 						try {
-							fos.close();
-						} catch (Throwable t) {
+							new RangedDownload(store, localFile, serverInfo.getLength(), serverInfo.getLastModified()).run(monitor);
+						} finally {
+							store.clearServerFileInfo();
+							store.clearLocalFileInfo();
 						}
-						monitor.done();
 					}
 				} else
 					throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, "Server resource not found [" + uri + "]"));
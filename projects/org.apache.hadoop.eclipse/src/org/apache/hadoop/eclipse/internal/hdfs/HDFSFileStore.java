@@ -27,13 +27,19 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.eclipse.Activator;
 import org.apache.hadoop.eclipse.hdfs.HDFSClient;
+import org.apache.hadoop.eclipse.hdfs.ResourceChecksum;
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation;
+import org.apache.hadoop.eclipse.hdfs.ResourceListing;
+import org.apache.hadoop.eclipse.hdfs.UploadOptions;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
 import org.apache.hadoop.eclipse.internal.model.HDFSServer;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -46,6 +52,7 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.URIUtil;
 
@@ -60,14 +67,12 @@ import org.eclipse.core.runtime.URIUtil;
 public class HDFSFileStore extends FileStore {
 
 	private static final Logger logger = Logger.getLogger(HDFSFileStore.class);
+	private static final int DEFAULT_LIST_PAGE_SIZE = 1000;
 	private final HDFSURI uri;
 	private File localFile = null;
-	private FileInfo serverFileInfo = null;
 	private FileInfo localFileInfo = null;
-	private ResourceInformation serverResourceInfo = null;
 	private HDFSServer hdfsServer;
-	private ResourceInformation.Permissions effectivePermissions = null;
-	private List<String> systemDefaultUserIdAndGroupIds = null;
+	private Boolean localMetadata = null;
 
 	public HDFSFileStore(HDFSURI uri) {
 		this.uri = uri;
@@ -82,26 +87,19 @@ public class HDFSFileStore extends FileStore {
 
 	@Override
 	public String[] childNames(int options, IProgressMonitor monitor) throws CoreException {
-		List<String> childNamesList = new ArrayList<String>();
+		Set<String> childNamesList = new LinkedHashSet<String>();
 		if (getServer() != null) {
-			try {
-				List<ResourceInformation> listResources = getClient().listResources(uri.getURI(), getServer().getUserId());
-				for (ResourceInformation lr : listResources) {
-					if (lr != null)
-						childNamesList.add(lr.getName());
-				}
-			} catch (IOException e) {
-				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
-			} catch (InterruptedException e) {
-				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
-			}
+			childNamesList.addAll(listServerChildren(monitor).keySet());
 			if (isLocalFile()) {
 				// If there is a local folder also, then local children belong
 				// to
 				// the server also.
 				File local = getLocalFile();
 				if (local.isDirectory()) {
-					childNamesList.addAll(Arrays.asList(local.list()));
+					for (String name : local.list()) {
+						if (!TransferJournal.isTransferFile(name))
+							childNamesList.add(name);
+					}
 				}
 			}
 		}
@@ -110,6 +108,95 @@ public class HDFSFileStore extends FileStore {
 		return childNamesList.toArray(new String[childNamesList.size()]);
 	}
 
+	/**
+	 * Creates all children from a single listing of this folder. The server
+	 * information of every child is cached from the listing, so that no
+	 * further server calls are needed while the cache holds it.
+	 */
+	@Override
+	public IFileStore[] childStores(int options, IProgressMonitor monitor) throws CoreException {
+		Map<String, HDFSFileStore> children = new LinkedHashMap<String, HDFSFileStore>();
+		HDFSServer server = getServer();
+		if (server != null) {
+			children.putAll(listServerChildren(monitor));
+			if (isLocalFile()) {
+				File local = getLocalFile();
+				if (local.isDirectory()) {
+					for (String name : local.list()) {
+						if (!children.containsKey(name) && !TransferJournal.isTransferFile(name)) {
+							// Local only
+							HDFSFileStore child = (HDFSFileStore) getChild(name);
+							child.initServerFileInfo(null);
+							children.put(name, child);
+						}
+					}
+				}
+			}
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: childStores():" + children.keySet());
+		return children.values().toArray(new IFileStore[children.size()]);
+	}
+
+	@Override
+	public IFileInfo[] childInfos(int options, IProgressMonitor monitor) throws CoreException {
+		IFileStore[] childStores = childStores(options, monitor);
+		IFileInfo[] childInfos = new IFileInfo[childStores.length];
+		for (int i = 0; i < childStores.length; i++)
+			childInfos[i] = childStores[i].fetchInfo(options, monitor);
+		return childInfos;
+	}
+
+	private Map<String, HDFSFileStore> listServerChildren(IProgressMonitor monitor) throws CoreException {
+		Map<String, HDFSFileStore> children = new LinkedHashMap<String, HDFSFileStore>();
+		for (String name : listServerEntries(monitor).keySet())
+			children.put(name, (HDFSFileStore) getChild(name));
+		return children;
+	}
+
+	/**
+	 * Lists the children of this folder on the server, one page at a time.
+	 * The server information of every child is cached as soon as its page
+	 * arrives. It is also returned, for callers which need it for more
+	 * children than the cache holds.
+	 * 
+	 * @param monitor
+	 * @return server information of the children by name
+	 * @throws CoreException
+	 */
+	public Map<String, HDFSMetadataCache.Entry> listServerEntries(IProgressMonitor monitor) throws CoreException {
+		Map<String, HDFSMetadataCache.Entry> children = new LinkedHashMap<String, HDFSMetadataCache.Entry>();
+		if (getServer() == null)
+			return children;
+		try {
+			ResourceListing listing = getClient().openListing(uri.getURI(), getServer().getUserId(),
+					HadoopPreferences.getInt(HadoopPreferences.HDFS_LIST_PAGE_SIZE, DEFAULT_LIST_PAGE_SIZE));
+			try {
+				List<ResourceInformation> page = listing.nextPage();
+				while (page != null) {
+					for (ResourceInformation lr : page) {
+						if (lr != null && !TransferJournal.isTransferFile(lr.getName())) {
+							HDFSFileStore child = (HDFSFileStore) getChild(lr.getName());
+							children.put(lr.getName(), child.initServerFileInfo(lr));
+						}
+					}
+					if (monitor != null && monitor.isCanceled())
+						throw new OperationCanceledException();
+					page = listing.nextPage();
+				}
+			} finally {
+				listing.close();
+			}
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: listServerEntries(): " + children.size() + " children");
+		return children;
+	}
+
 	/**
 	 * @return
 	 * @throws CoreException
@@ -130,63 +217,15 @@ public class HDFSFileStore extends FileStore {
 	 * </ul>
 	 * 
 	 * This method will attempt to determine both server and client file
-	 * informations depending on which is not available. Stale information can
-	 * be cleared by call {@link #clearServerFileInfo()} and
-	 * {@link #clearLocalFileInfo()}.
+	 * informations depending on which is not available. Server information is
+	 * shared with other stores of the same resource through the server's
+	 * {@link HDFSMetadataCache}. Stale information can be cleared by call
+	 * {@link #clearServerFileInfo()} and {@link #clearLocalFileInfo()}.
 	 * 
 	 */
 	@Override
 	public IFileInfo fetchInfo(int options, IProgressMonitor monitor) throws CoreException {
-		if (serverFileInfo == null) {
-			serverResourceInfo = null;
-			this.effectivePermissions = null;
-			FileInfo fi = new FileInfo(getName());
-			HDFSServer server = getServer();
-			if (server != null) {
-				try {
-					if (".project".equals(getName())) {
-						fi.setExists(getLocalFile().exists());
-						fi.setLength(getLocalFile().length());
-					} else {
-						ResourceInformation fileInformation = getClient().getResourceInformation(uri.getURI(), server.getUserId());
-						if (fileInformation != null) {
-							serverResourceInfo = fileInformation;
-							fi.setDirectory(fileInformation.isFolder());
-							fi.setExists(true);
-							fi.setLastModified(fileInformation.getLastModifiedTime());
-							fi.setLength(fileInformation.getSize());
-							fi.setName(fileInformation.getName());
-							String userId = server.getUserId();
-							List<String> groupIds = server.getGroupIds();
-							if (userId == null) {
-								userId = getDefaultUserId();
-								groupIds = getDefaultGroupIds();
-							}
-							fileInformation.updateEffectivePermissions(userId, groupIds);
-							this.effectivePermissions = fileInformation.getEffectivePermissions();
-							fi.setAttribute(EFS.ATTRIBUTE_OWNER_READ, fileInformation.getUserPermissions().read);
-							fi.setAttribute(EFS.ATTRIBUTE_OWNER_WRITE, fileInformation.getUserPermissions().write);
-							fi.setAttribute(EFS.ATTRIBUTE_OWNER_EXECUTE, fileInformation.getUserPermissions().execute);
-							fi.setAttribute(EFS.ATTRIBUTE_GROUP_READ, fileInformation.getGroupPermissions().read);
-							fi.setAttribute(EFS.ATTRIBUTE_GROUP_WRITE, fileInformation.getGroupPermissions().write);
-							fi.setAttribute(EFS.ATTRIBUTE_GROUP_EXECUTE, fileInformation.getGroupPermissions().execute);
-							fi.setAttribute(EFS.ATTRIBUTE_OTHER_READ, fileInformation.getOtherPermissions().read);
-							fi.setAttribute(EFS.ATTRIBUTE_OTHER_WRITE, fileInformation.getOtherPermissions().write);
-							fi.setAttribute(EFS.ATTRIBUTE_OTHER_EXECUTE, fileInformation.getOtherPermissions().execute);
-						}
-					}
-				} catch (IOException e) {
-					throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
-				} catch (InterruptedException e) {
-					throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
-				} finally {
-				}
-			} else {
-				// No server definition
-				fi.setExists(false);
-			}
-			serverFileInfo = fi;
-		}
+		FileInfo serverFileInfo = getServerEntry().getFileInfo();
 		if (localFileInfo == null) {
 			if (isLocalFile()) {
 				File file = getLocalFile();
@@ -209,38 +248,138 @@ public class HDFSFileStore extends FileStore {
 		return serverFileInfo;
 	}
 
-	protected String getDefaultUserId() {
-		if (systemDefaultUserIdAndGroupIds == null) {
+	/**
+	 * Provides the server information of this store, from the metadata cache
+	 * when available.
+	 */
+	private HDFSMetadataCache.Entry getServerEntry() throws CoreException {
+		HDFSServer server = getServer();
+		if (server == null) {
+			// No server definition
+			FileInfo fi = new FileInfo(getName());
+			fi.setExists(false);
+			return new HDFSMetadataCache.Entry(fi, null, null);
+		}
+		HDFSMetadataCache.Entry entry = getMetadataCache().get(uri.getURI().toString());
+		if (entry == null) {
 			try {
-				this.systemDefaultUserIdAndGroupIds = getClient().getDefaultUserAndGroupIds();
+				if (isLocalMetadata())
+					entry = initServerFileInfo(null);
+				else
+					entry = initServerFileInfo(getClient().getResourceInformation(uri.getURI(), server.getUserId()));
 			} catch (IOException e) {
-				logger.debug(e.getMessage(), e);
-			} catch (CoreException e) {
-				logger.debug(e.getMessage(), e);
+				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
 			} catch (InterruptedException e) {
-				logger.debug(e.getMessage(), e);
+				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
 			}
 		}
-		if (this.systemDefaultUserIdAndGroupIds != null && this.systemDefaultUserIdAndGroupIds.size() > 0)
-			return this.systemDefaultUserIdAndGroupIds.get(0);
-		return null;
+		return entry;
 	}
 
-	protected List<String> getDefaultGroupIds() {
-		if (systemDefaultUserIdAndGroupIds == null) {
-			try {
-				this.systemDefaultUserIdAndGroupIds = getClient().getDefaultUserAndGroupIds();
-			} catch (IOException e) {
-				logger.debug(e.getMessage(), e);
-			} catch (CoreException e) {
-				logger.debug(e.getMessage(), e);
-			} catch (InterruptedException e) {
-				logger.debug(e.getMessage(), e);
+	/**
+	 * Determines if the server information of this resource can be provided
+	 * without a server call, because it is cached or not needed.
+	 * 
+	 * @return
+	 */
+	public boolean isServerInfoAvailable() {
+		HDFSServer server = getServer();
+		return server == null || isLocalMetadata() || getMetadataCache().contains(uri.getURI().toString());
+	}
+
+	/**
+	 * @return <code>true</code> when this resource is Eclipse metadata, which
+	 *         lives only in the workspace
+	 * @see HDFSUtilites#isLocalMetadata(String, String)
+	 */
+	protected boolean isLocalMetadata() {
+		if (localMetadata == null) {
+			HDFSServer server = getServer();
+			boolean metadata = false;
+			if (server != null) {
+				try {
+					metadata = HDFSUtilites.isLocalMetadata(new URI(server.getUri()).getPath(), uri.getURI().getPath());
+				} catch (URISyntaxException e) {
+					logger.debug(e.getMessage(), e);
+				}
 			}
+			localMetadata = metadata;
 		}
-		if (this.systemDefaultUserIdAndGroupIds != null && this.systemDefaultUserIdAndGroupIds.size() > 1)
-			return this.systemDefaultUserIdAndGroupIds.subList(1, this.systemDefaultUserIdAndGroupIds.size() - 1);
-		return null;
+		return localMetadata;
+	}
+
+	private HDFSMetadataCache getMetadataCache() {
+		return HDFSManager.INSTANCE.getMetadataCache(getServer().getUri());
+	}
+
+	/**
+	 * Sets the server information of this store from the given resource
+	 * information, as provided by the server.
+	 * 
+	 * @param fileInformation
+	 *            <code>null</code> when the resource does not exist on the
+	 *            server
+	 * @return the cached server information
+	 * @throws CoreException
+	 */
+	protected HDFSMetadataCache.Entry initServerFileInfo(ResourceInformation fileInformation) throws CoreException {
+		ResourceInformation serverResourceInfo = null;
+		ResourceInformation.Permissions effectivePermissions = null;
+		FileInfo fi = new FileInfo(getName());
+		HDFSServer server = getServer();
+		if (isLocalMetadata()) {
+			File file = getLocalFile();
+			fi.setExists(file.exists());
+			fi.setDirectory(file.isDirectory());
+			fi.setLength(file.length());
+			fi.setLastModified(file.lastModified());
+		} else if (fileInformation != null && server != null) {
+			serverResourceInfo = fileInformation;
+			fi.setDirectory(fileInformation.isFolder());
+			fi.setExists(true);
+			fi.setLastModified(fileInformation.getLastModifiedTime());
+			fi.setLength(fileInformation.getSize());
+			fi.setName(fileInformation.getName());
+			HDFSIdentityCache.Identity identity = getIdentity();
+			if (identity != null)
+				fileInformation.updateEffectivePermissions(identity.getUserId(), identity.getGroupSet());
+			effectivePermissions = fileInformation.getEffectivePermissions();
+			fi.setAttribute(EFS.ATTRIBUTE_OWNER_READ, fileInformation.getUserPermissions().read);
+			fi.setAttribute(EFS.ATTRIBUTE_OWNER_WRITE, fileInformation.getUserPermissions().write);
+			fi.setAttribute(EFS.ATTRIBUTE_OWNER_EXECUTE, fileInformation.getUserPermissions().execute);
+			fi.setAttribute(EFS.ATTRIBUTE_GROUP_READ, fileInformation.getGroupPermissions().read);
+			fi.setAttribute(EFS.ATTRIBUTE_GROUP_WRITE, fileInformation.getGroupPermissions().write);
+			fi.setAttribute(EFS.ATTRIBUTE_GROUP_EXECUTE, fileInformation.getGroupPermissions().execute);
+			fi.setAttribute(EFS.ATTRIBUTE_OTHER_READ, fileInformation.getOtherPermissions().read);
+			fi.setAttribute(EFS.ATTRIBUTE_OTHER_WRITE, fileInformation.getOtherPermissions().write);
+			fi.setAttribute(EFS.ATTRIBUTE_OTHER_EXECUTE, fileInformation.getOtherPermissions().execute);
+		}
+		HDFSMetadataCache.Entry entry = new HDFSMetadataCache.Entry(fi, serverResourceInfo, effectivePermissions);
+		// Eclipse metadata lives only in the workspace, and is not cached
+		if (server != null && !isLocalMetadata())
+			getMetadataCache().put(uri.getURI().toString(), entry);
+		return entry;
+	}
+
+	protected String getDefaultUserId() {
+		HDFSIdentityCache.Identity identity = getIdentity();
+		return identity == null ? null : identity.getUserId();
+	}
+
+	protected List<String> getDefaultGroupIds() {
+		HDFSIdentityCache.Identity identity = getIdentity();
+		return identity == null ? null : identity.getGroupIds();
+	}
+
+	/**
+	 * @return the user and groups as which the server is accessed, or
+	 *         <code>null</code> when they are unknown
+	 */
+	protected HDFSIdentityCache.Identity getIdentity() {
+		HDFSServer server = getServer();
+		if (server == null)
+			return null;
+		return HDFSManager.INSTANCE.getIdentityCache(server.getUri()).getIdentity();
 	}
 
 	/*
@@ -284,7 +423,30 @@ public class HDFSFileStore extends FileStore {
 	protected void clearServerFileInfo() {
 		if (logger.isDebugEnabled())
 			logger.debug("[" + uri + "]: clearServerFileInfo()");
-		this.serverFileInfo = null;
+		if (getServer() != null)
+			getMetadataCache().invalidate(uri.getURI().toString());
+	}
+
+	/**
+	 * Clears the server information of this resource, after it has been
+	 * created on the server. Parents remembered as missing are cleared too.
+	 */
+	protected void clearCreatedServerFileInfo() {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: clearCreatedServerFileInfo()");
+		if (getServer() != null)
+			getMetadataCache().invalidateCreated(uri.getURI().toString());
+	}
+
+	/**
+	 * Clears the server information of this resource, and of all resources
+	 * below it.
+	 */
+	protected void clearServerFileInfoTree() {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: clearServerFileInfoTree()");
+		if (getServer() != null)
+			getMetadataCache().invalidateSubtree(uri.getURI().toString());
 	}
 
 	/**
@@ -349,6 +511,8 @@ public class HDFSFileStore extends FileStore {
 				} catch (FileNotFoundException e) {
 					throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
 				}
+			} else if (isLocalMetadata()) {
+				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, "Local file does not exist: " + lFile.getAbsolutePath()));
 			} else {
 				return openRemoteInputStream(options, monitor);
 			}
@@ -358,7 +522,7 @@ public class HDFSFileStore extends FileStore {
 	public InputStream openRemoteInputStream(int options, IProgressMonitor monitor) throws CoreException {
 		if (logger.isDebugEnabled())
 			logger.debug("[" + uri + "]: openRemoteInputStream()");
-		if (".project".equals(getName())) {
+		if (isLocalMetadata()) {
 			return null;
 		} else {
 			try {
@@ -372,6 +536,29 @@ public class HDFSFileStore extends FileStore {
 		}
 	}
 
+	/**
+	 * Opens the server file for reading, starting at the given position.
+	 * 
+	 * @param offset
+	 * @param monitor
+	 * @return
+	 * @throws CoreException
+	 */
+	public InputStream openRemoteInputStream(long offset, IProgressMonitor monitor) throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: openRemoteInputStream(" + offset + ")");
+		if (isLocalMetadata())
+			return null;
+		try {
+			HDFSServer server = getServer();
+			return getClient().openInputStream(uri.getURI(), server == null ? null : server.getUserId(), offset);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
 	@Override
 	public URI toURI() {
 		return uri.getURI();
@@ -413,10 +600,18 @@ public class HDFSFileStore extends FileStore {
 	public IFileStore mkdir(int options, IProgressMonitor monitor) throws CoreException {
 		if (logger.isDebugEnabled())
 			logger.debug("[" + uri + "]: mkdir()");
+		if (isLocalMetadata()) {
+			File lFile = getLocalFile();
+			lFile.mkdirs();
+			clearLocalFileInfo();
+			return lFile.isDirectory() ? this : null;
+		}
 		try {
 			clearServerFileInfo();
 			HDFSServer server = getServer();
-			if (getClient().mkdirs(uri.getURI(), server == null ? null : server.getUserId())) {
+			boolean created = getClient().mkdirs(uri.getURI(), server == null ? null : server.getUserId());
+			clearCreatedServerFileInfo();
+			if (created) {
 				return this;
 			} else {
 				return null;
@@ -455,15 +650,30 @@ public class HDFSFileStore extends FileStore {
 		return isLocalFile() && !isRemoteFile();
 	}
 
+	/**
+	 * Returns the information of the resource on the server. Unlike
+	 * {@link #fetchInfo()}, this does not describe the local copy when there
+	 * is one.
+	 * 
+	 * @throws CoreException
+	 *             when the server could not be reached
+	 */
+	public IFileInfo fetchServerInfo() throws CoreException {
+		return getServerEntry().getFileInfo();
+	}
+
 	/**
 	 * Determines if file exists on server side.
 	 * 
 	 * @return
 	 */
 	public boolean isRemoteFile() {
-		if (this.serverFileInfo == null)
-			this.fetchInfo();
-		return this.serverFileInfo != null && this.serverFileInfo.exists();
+		try {
+			return getServerEntry().getFileInfo().exists();
+		} catch (CoreException e) {
+			logger.debug("Unable to determine if file is remote", e);
+		}
+		return false;
 	}
 
 	/*
@@ -516,7 +726,7 @@ public class HDFSFileStore extends FileStore {
 			logger.debug("[" + uri + "]: openRemoteOutputStream()");
 		try {
 			HDFSServer server = getServer();
-			clearServerFileInfo();
+			clearCreatedServerFileInfo();
 			if (fetchInfo().exists())
 				return getClient().openOutputStream(uri.getURI(), server == null ? null : server.getUserId());
 			else
@@ -528,6 +738,241 @@ public class HDFSFileStore extends FileStore {
 		}
 	}
 
+	/**
+	 * Creates the server file with the options, replacing it when it exists.
+	 * 
+	 * @param options
+	 * @param monitor
+	 * @return
+	 * @throws CoreException
+	 */
+	public OutputStream openRemoteOutputStream(UploadOptions options, IProgressMonitor monitor) throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: openRemoteOutputStream(): " + options);
+		try {
+			HDFSServer server = getServer();
+			clearCreatedServerFileInfo();
+			return getClient().createOutputStream(uri.getURI(), server == null ? null : server.getUserId(), options);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Changes the replication of the server file.
+	 * 
+	 * @param replication
+	 *            0 for the default of the server
+	 * @return <code>true</code> when changed
+	 * @throws CoreException
+	 */
+	public boolean setServerReplication(short replication) throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: setServerReplication(): " + replication);
+		try {
+			HDFSServer server = getServer();
+			return getClient().setReplication(uri.getURI(), server == null ? null : server.getUserId(), replication);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * @return the replication of new files on the server, or 0 when not known
+	 * @throws CoreException
+	 */
+	public short getServerDefaultReplication() throws CoreException {
+		try {
+			HDFSServer server = getServer();
+			return getClient().getDefaultReplication(uri.getURI(), server == null ? null : server.getUserId());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * @return the least number of replicas of any block of the server file,
+	 *         or -1 when not known
+	 * @throws CoreException
+	 */
+	public int getServerMinReplicas() throws CoreException {
+		try {
+			HDFSServer server = getServer();
+			return getClient().getMinReplicas(uri.getURI(), server == null ? null : server.getUserId());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Opens the server file for writing at its end.
+	 * 
+	 * @param monitor
+	 * @return
+	 * @throws CoreException
+	 */
+	public OutputStream openRemoteAppendStream(IProgressMonitor monitor) throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: openRemoteAppendStream()");
+		try {
+			HDFSServer server = getServer();
+			clearServerFileInfo();
+			return getClient().appendOutputStream(uri.getURI(), server == null ? null : server.getUserId());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * @return the store of the hidden server file into which this file is
+	 *         uploaded, before it replaces this file
+	 */
+	public HDFSFileStore getUploadPartStore() {
+		return (HDFSFileStore) getParent().getChild(TransferJournal.getPartName(getName()));
+	}
+
+	/**
+	 * Replaces the server file with the server file of the source, by
+	 * renaming it. An existing server file is deleted first, as HDFS does
+	 * not rename onto existing files.
+	 * 
+	 * @param source
+	 *            store on the same server
+	 * @throws CoreException
+	 */
+	public void replaceRemoteFile(HDFSFileStore source) throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: replaceRemoteFile(): " + source.toURI());
+		try {
+			HDFSServer server = getServer();
+			String user = server == null ? null : server.getUserId();
+			clearServerFileInfo();
+			if (isRemoteFile()) {
+				getClient().delete(uri.getURI(), user);
+				ReplicationQueue.INSTANCE.cancel(uri.getURI());
+			}
+			if (!getClient().rename(source.uri.getURI(), uri.getURI(), user))
+				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, "Unable to rename " + source.toURI() + " to " + uri));
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} finally {
+			source.clearServerFileInfo();
+			clearCreatedServerFileInfo();
+		}
+	}
+
+	/**
+	 * Deletes the server file, keeping the local copy.
+	 * 
+	 * @throws CoreException
+	 */
+	public void deleteRemoteFile() throws CoreException {
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: deleteRemoteFile()");
+		try {
+			HDFSServer server = getServer();
+			getClient().delete(uri.getURI(), server == null ? null : server.getUserId());
+			ReplicationQueue.INSTANCE.cancel(uri.getURI());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} finally {
+			clearServerFileInfo();
+		}
+	}
+
+	/**
+	 * @return the checksum of the server file, or <code>null</code> when the
+	 *         server does not provide one
+	 * @throws CoreException
+	 */
+	public ResourceChecksum getServerChecksum() throws CoreException {
+		try {
+			HDFSServer server = getServer();
+			return getClient().getFileChecksum(uri.getURI(), server == null ? null : server.getUserId());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Renames on the server when the destination is on the same server,
+	 * instead of copying the content.
+	 */
+	@Override
+	public void move(IFileStore destination, int options, IProgressMonitor monitor) throws CoreException {
+		if (destination instanceof HDFSFileStore && rename((HDFSFileStore) destination, options))
+			return;
+		super.move(destination, options, monitor);
+	}
+
+	/**
+	 * Renames this resource on the server to the destination, and moves its
+	 * local copy and cached server information along.
+	 * 
+	 * @param destination
+	 * @param options
+	 *            {@link EFS#OVERWRITE} to replace an existing destination
+	 * @return <code>false</code> when the destination is on another server,
+	 *         or the resource cannot be renamed and has to be copied
+	 * @throws CoreException
+	 */
+	public boolean rename(HDFSFileStore destination, int options) throws CoreException {
+		HDFSServer server = getServer();
+		HDFSServer destinationServer = destination.getServer();
+		if (server == null || destinationServer == null || !server.getUri().equals(destinationServer.getUri()))
+			return false;
+		if (isLocalMetadata() || destination.isLocalMetadata() || !isRemoteFile())
+			return false;
+		if (destination.isRemoteFile()) {
+			// Renaming onto a folder would move into it
+			if ((options & EFS.OVERWRITE) != 0)
+				return false;
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, "Resource already exists [" + destination.toURI() + "]"));
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: rename(): " + destination.toURI());
+		File source = isLocalFile() ? getLocalFile() : null;
+		try {
+			if (!getClient().rename(uri.getURI(), destination.uri.getURI(), server.getUserId()))
+				return false;
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		} catch (InterruptedException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e));
+		}
+		getMetadataCache().moveSubtree(uri.getURI().toString(), destination.uri.getURI().toString());
+		ReplicationQueue.INSTANCE.moved(uri.getURI(), destination.uri.getURI());
+		if (source != null && source.exists()) {
+			File target = destination.getLocalFile();
+			target.getParentFile().mkdirs();
+			if (!source.renameTo(target))
+				logger.warn("[" + uri + "]: Unable to move local copy to " + target);
+			// Partial transfers belong to the old name
+			TransferJournal.getPartFile(source).delete();
+			TransferJournal.getDownloadJournalFile(source).delete();
+			TransferJournal.getUploadJournalFile(source).delete();
+		}
+		clearLocalFileInfo();
+		destination.clearLocalFileInfo();
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -539,25 +984,34 @@ public class HDFSFileStore extends FileStore {
 		if (logger.isDebugEnabled())
 			logger.debug("[" + uri + "]: delete()");
 		try {
+			final HDFSServer server = getServer();
+			final boolean serverRoot = server != null && server.getUri().equals(uri.getURI().toString());
 			if (isLocalFile()) {
 				clearLocalFileInfo();
 				final File lf = getLocalFile();
 				final File plf = lf.getParentFile();
-				lf.delete();
+				if (serverRoot)
+					lf.delete();
+				else
+					deleteLocalTree(lf);
 				UploadFileJob.deleteFoldersIfEmpty(plf);
 			}
 			if (isRemoteFile()) {
-				final HDFSServer server = getServer();
 				if (server != null) {
-					if (server.getUri().equals(uri.getURI().toString())) {
+					if (serverRoot) {
 						// Server location is the same as the project - so we
 						// just
 						// disconnect instead of actually deleting the root
 						// folder
 						// on HDFS.
 					} else {
-						clearServerFileInfo();
-						getClient().delete(uri.getURI(), server == null ? null : server.getUserId());
+						clearServerFileInfoTree();
+						try {
+							getClient().delete(uri.getURI(), server == null ? null : server.getUserId());
+							ReplicationQueue.INSTANCE.cancel(uri.getURI());
+						} finally {
+							clearServerFileInfoTree();
+						}
 					}
 				} else {
 					// Not associated with any server, we just disconnect.
@@ -572,6 +1026,18 @@ public class HDFSFileStore extends FileStore {
 		}
 	}
 
+	/**
+	 * Deletes the local file, or the local folder with all its contents.
+	 */
+	private static void deleteLocalTree(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				deleteLocalTree(child);
+		}
+		file.delete();
+	}
+
 	/**
 	 * Effective permissions are only given when the accessing user and the
 	 * permissions from the server are known. If any data in permissions
@@ -580,15 +1046,23 @@ public class HDFSFileStore extends FileStore {
 	 * @return the effectivePermissions
 	 */
 	public ResourceInformation.Permissions getEffectivePermissions() {
-		if (effectivePermissions == null)
-			fetchInfo();
-		return effectivePermissions;
+		try {
+			return getServerEntry().getEffectivePermissions();
+		} catch (CoreException e) {
+			logger.debug(e.getMessage(), e);
+		}
+		return null;
 	}
 
 	/**
 	 * @return the serverResourceInfo
 	 */
 	public ResourceInformation getServerResourceInfo() {
-		return serverResourceInfo;
+		try {
+			return getServerEntry().getResourceInfo();
+		} catch (CoreException e) {
+			logger.debug(e.getMessage(), e);
+		}
+		return null;
 	}
 }
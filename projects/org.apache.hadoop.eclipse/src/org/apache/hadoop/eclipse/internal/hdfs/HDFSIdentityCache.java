@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.hadoop.eclipse.internal.model.HDFSServer;
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The user and groups as which a server is accessed. When the server does not
+ * configure a user, the default user and groups are looked up from the client
+ * once, since the lookup can be expensive, and are kept for a time-to-live.
+ * Once expired, the last known identity is still provided while it is looked
+ * up again in the background.
+ */
+public class HDFSIdentityCache {
+
+	private static final Logger logger = Logger.getLogger(HDFSIdentityCache.class);
+	private static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+	private static final long RETRY_DELAY_MILLIS = 10 * 1000;
+
+	/**
+	 * A user and its groups.
+	 */
+	public static class Identity {
+		private final String userId;
+		private final List<String> groupIds;
+		private final Set<String> groupSet;
+
+		public Identity(String userId, List<String> groupIds) {
+			this.userId = userId;
+			this.groupIds = groupIds == null ? Collections.<String> emptyList() : Collections.unmodifiableList(new ArrayList<String>(groupIds));
+			this.groupSet = Collections.unmodifiableSet(new HashSet<String>(this.groupIds));
+		}
+
+		public String getUserId() {
+			return userId;
+		}
+
+		public List<String> getGroupIds() {
+			return groupIds;
+		}
+
+		/**
+		 * @return the groups, for fast membership checks
+		 */
+		public Set<String> getGroupSet() {
+			return groupSet;
+		}
+
+		@Override
+		public String toString() {
+			return userId + groupIds;
+		}
+	}
+
+	private final String serverURI;
+	private final long ttlMillis;
+	private final Object fetchLock = new Object();
+	private volatile Identity defaultIdentity;
+	private volatile long fetched;
+	private long failed;
+	private volatile Identity configuredIdentity;
+	private final Job refreshJob = new Job("Refreshing HDFS user and groups") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			fetchDefault();
+			return Status.OK_STATUS;
+		}
+	};
+
+	public HDFSIdentityCache(String serverURI) {
+		this.serverURI = serverURI;
+		this.ttlMillis = HadoopPreferences.getLong(HadoopPreferences.HDFS_IDENTITY_CACHE_TTL, DEFAULT_TTL_MILLIS);
+		refreshJob.setSystem(true);
+	}
+
+	/**
+	 * Provides the identity as which the server is accessed, looking up the
+	 * default user and groups when they are not known yet.
+	 *
+	 * @return the identity, or <code>null</code> when it could not be
+	 *         determined
+	 */
+	public Identity getIdentity() {
+		Identity identity = getConfiguredIdentity();
+		if (identity != null)
+			return identity;
+		Identity current = defaultIdentity;
+		if (current != null) {
+			if (System.currentTimeMillis() - fetched >= ttlMillis)
+				refreshJob.schedule();
+			return current;
+		}
+		return fetchDefault();
+	}
+
+	/**
+	 * Like {@link #getIdentity()}, but never looks up the default user and
+	 * groups in the calling thread.
+	 *
+	 * @return the identity, or <code>null</code> when it is not known yet
+	 */
+	public Identity peekIdentity() {
+		Identity identity = getConfiguredIdentity();
+		if (identity != null)
+			return identity;
+		Identity current = defaultIdentity;
+		if (current == null || System.currentTimeMillis() - fetched >= ttlMillis)
+			refreshJob.schedule();
+		return current;
+	}
+
+	/**
+	 * Forgets the default user and groups, so that they are looked up again
+	 * when next needed.
+	 */
+	public void invalidate() {
+		synchronized (fetchLock) {
+			defaultIdentity = null;
+			configuredIdentity = null;
+			failed = 0;
+		}
+	}
+
+	private Identity getConfiguredIdentity() {
+		HDFSServer server = HDFSManager.INSTANCE.getServer(serverURI);
+		if (server == null || server.getUserId() == null)
+			return null;
+		Identity identity = configuredIdentity;
+		List<String> groupIds = server.getGroupIds() == null ? Collections.<String> emptyList() : server.getGroupIds();
+		if (identity == null || !server.getUserId().equals(identity.getUserId()) || !identity.getGroupIds().equals(groupIds)) {
+			identity = new Identity(server.getUserId(), groupIds);
+			configuredIdentity = identity;
+		}
+		return identity;
+	}
+
+	private Identity fetchDefault() {
+		synchronized (fetchLock) {
+			long now = System.currentTimeMillis();
+			if (defaultIdentity != null && now - fetched < ttlMillis)
+				return defaultIdentity;
+			if (now - failed < RETRY_DELAY_MILLIS)
+				return defaultIdentity;
+			try {
+				List<String> ids = HDFSManager.INSTANCE.getClient(serverURI).getDefaultUserAndGroupIds();
+				if (ids != null && ids.size() > 0) {
+					fetched = System.currentTimeMillis();
+					defaultIdentity = new Identity(ids.get(0), ids.subList(1, ids.size()));
+					if (logger.isDebugEnabled())
+						logger.debug("fetchDefault(" + serverURI + "): " + defaultIdentity);
+				}
+			} catch (Exception e) {
+				failed = System.currentTimeMillis();
+				logger.debug(e.getMessage(), e);
+			}
+			return defaultIdentity;
+		}
+	}
+}
@@ -19,10 +19,10 @@
 package org.apache.hadoop.eclipse.internal.hdfs;
 
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.eclipse.Activator;
 import org.apache.hadoop.eclipse.hdfs.HDFSClient;
@@ -61,6 +61,11 @@ public class HDFSManager {
 		HDFSServer server = HDFSManager.INSTANCE.getServer(project.getLocationURI().toString());
 		if (server != null && server.getStatusCode() != ServerStatus.DISCONNECTED_VALUE)
 			server.setStatusCode(ServerStatus.DISCONNECTED_VALUE);
+		if (server != null) {
+			HDFSManager.INSTANCE.releaseClient(server.getUri());
+			HDFSManager.INSTANCE.getMetadataCache(server.getUri()).invalidateAll();
+			HDFSManager.INSTANCE.getIdentityCache(server.getUri()).invalidate();
+		}
 		try {
 			project.refreshLocal(IResource.DEPTH_INFINITE, new NullProgressMonitor());
 		} catch (CoreException e) {
@@ -72,6 +77,10 @@ public class HDFSManager {
 		HDFSServer server = HDFSManager.INSTANCE.getServer(project.getLocationURI().toString());
 		if (server != null && server.getStatusCode() == ServerStatus.DISCONNECTED_VALUE)
 			server.setStatusCode(0);
+		if (server != null) {
+			HDFSManager.INSTANCE.getMetadataCache(server.getUri()).invalidateAll();
+			HDFSManager.INSTANCE.getIdentityCache(server.getUri()).invalidate();
+		}
 		try {
 			project.refreshLocal(IResource.DEPTH_INFINITE, new NullProgressMonitor());
 		} catch (CoreException e) {
@@ -79,22 +88,22 @@ public class HDFSManager {
 		}
 	}
 
-	private Map<HDFSServer, String> serverToProjectMap = new HashMap<HDFSServer, String>();
-	private Map<String, HDFSServer> projectToServerMap = new HashMap<String, HDFSServer>();
-	private final Map<String, HDFSClient> hdfsClientsMap = new HashMap<String, HDFSClient>();
+	/*
+	 * Read without locking from jobs, decorators and the UI. Servers are
+	 * added and removed under registryLock, so that all maps change together,
+	 * and clients are created under clientLock, so that each server gets one.
+	 */
+	private final Object registryLock = new Object();
+	private final Object clientLock = new Object();
+	private final ConcurrentMap<HDFSServer, String> serverToProjectMap = new ConcurrentHashMap<HDFSServer, String>();
+	private final ConcurrentMap<String, HDFSServer> projectToServerMap = new ConcurrentHashMap<String, HDFSServer>();
+	private final ConcurrentMap<String, HDFSClient> hdfsClientsMap = new ConcurrentHashMap<String, HDFSClient>();
+	private final ConcurrentMap<String, HDFSMetadataCache> metadataCacheMap = new ConcurrentHashMap<String, HDFSMetadataCache>();
+	private final ConcurrentMap<String, HDFSIdentityCache> identityCacheMap = new ConcurrentHashMap<String, HDFSIdentityCache>();
 	/**
-	 * URI should always end with a '/'
+	 * Server URIs should always end with a '/'
 	 */
-	private Map<String, HDFSServer> uriToServerMap = new HashMap<String, HDFSServer>();
-
-	private Map<String, HDFSServer> uriToServerCacheMap = new LinkedHashMap<String, HDFSServer>() {
-		private static final long serialVersionUID = 1L;
-		private int MAX_ENTRIES = 1 << 10;
-
-		protected boolean removeEldestEntry(Map.Entry<String, HDFSServer> eldest) {
-			return size() > MAX_ENTRIES;
-		};
-	};
+	private final ServerURIIndex<HDFSServer> serverIndex = new ServerURIIndex<HDFSServer>();
 
 	/**
 	 * Singleton
@@ -109,13 +118,11 @@ public class HDFSManager {
 	public void loadServers() {
 		final IWorkspaceRoot workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
 		for (HDFSServer server : getHdfsServers()) {
-			uriToServerMap.put(server.getUri(), server);
+			register(server, server.getName());
 			final IProject project = workspaceRoot.getProject(server.getName());
 			if (!project.exists()) {
 				server.setStatusCode(ServerStatus.NO_PROJECT_VALUE);
 			}
-			serverToProjectMap.put(server, server.getName());
-			projectToServerMap.put(server.getName(), server);
 		}
 		IProject[] projects = workspaceRoot.getProjects();
 		if (projects != null) {
@@ -163,9 +170,7 @@ public class HDFSManager {
 				hdfsServer.getGroupIds().add(groupId);
 		getHdfsServers().add(hdfsServer);
 		HadoopManager.INSTANCE.saveServers();
-		uriToServerMap.put(hdfsServer.getUri(), hdfsServer);
-		serverToProjectMap.put(hdfsServer, name);
-		projectToServerMap.put(name, hdfsServer);
+		register(hdfsServer, name);
 		createIProject(name, hdfsURI);
 		return hdfsServer;
 	}
@@ -187,22 +192,12 @@ public class HDFSManager {
 		return project;
 	}
 
+	/**
+	 * @param uri
+	 * @return the server whose URI is the longest prefix of the URI
+	 */
 	public HDFSServer getServer(String uri) {
-		if (uri != null && !uriToServerCacheMap.containsKey(uri)) {
-			String tmpUri = uri;
-			HDFSServer serverU = uriToServerMap.get(tmpUri);
-			while (serverU == null) {
-				int lastSlashIndex = tmpUri.lastIndexOf('/');
-				tmpUri = lastSlashIndex < 0 ? null : tmpUri.substring(0, lastSlashIndex);
-				if (tmpUri != null)
-					serverU = uriToServerMap.get(tmpUri + "/");
-				else
-					break;
-			}
-			if (serverU != null)
-				uriToServerCacheMap.put(uri, serverU);
-		}
-		return uriToServerCacheMap.get(uri);
+		return serverIndex.get(uri);
 	}
 
 	public String getProjectName(HDFSServer server) {
@@ -210,31 +205,25 @@ public class HDFSManager {
 	}
 
 	/**
-	 * @param string
+	 * Marks an operation on the resource as running, see
+	 * {@link ServerOperationTracker}.
+	 * 
+	 * @param uri
 	 */
 	public void startServerOperation(String uri) {
-		HDFSServer server = getServer(uri);
-		if (server != null && !server.getOperationURIs().contains(uri)) {
-			server.getOperationURIs().add(uri);
-		}
+		if (getServer(uri) != null)
+			ServerOperationTracker.INSTANCE.start(uri);
 	}
 
 	/**
-	 * @param string
+	 * @param uri
 	 */
 	public void stopServerOperation(String uri) {
-		HDFSServer server = getServer(uri);
-		if (server != null) {
-			server.getOperationURIs().remove(uri);
-		}
+		ServerOperationTracker.INSTANCE.stop(uri);
 	}
 
 	public boolean isServerOperationRunning(String uri) {
-		HDFSServer server = getServer(uri);
-		if (server != null) {
-			return server.getOperationURIs().contains(uri);
-		}
-		return false;
+		return ServerOperationTracker.INSTANCE.isRunning(uri);
 	}
 
 	/**
@@ -242,12 +231,110 @@ public class HDFSManager {
 	 */
 	public void deleteServer(HDFSServer server) {
 		getHdfsServers().remove(server);
-		String projectName = this.serverToProjectMap.remove(server);
-		this.projectToServerMap.remove(projectName);
-		this.uriToServerMap.remove(server.getUri());
+		unregister(server);
 		HadoopManager.INSTANCE.saveServers();
 	}
 
+	private void register(HDFSServer server, String projectName) {
+		synchronized (registryLock) {
+			serverToProjectMap.put(server, projectName);
+			projectToServerMap.put(projectName, server);
+			serverIndex.put(server.getUri(), server);
+		}
+	}
+
+	private void unregister(HDFSServer server) {
+		HDFSClient client;
+		synchronized (registryLock) {
+			serverIndex.remove(server.getUri());
+			String projectName = serverToProjectMap.remove(server);
+			if (projectName != null)
+				projectToServerMap.remove(projectName);
+			metadataCacheMap.remove(server.getUri());
+			identityCacheMap.remove(server.getUri());
+			synchronized (clientLock) {
+				client = hdfsClientsMap.remove(server.getUri());
+			}
+		}
+		TransferThrottle.removeServer(server.getUri());
+		if (client != null) {
+			try {
+				client.disconnect(new java.net.URI(server.getUri()));
+			} catch (Exception e) {
+				logger.warn("Unable to release connections of " + server.getUri(), e);
+			}
+		}
+	}
+
+	/**
+	 * Provides the cache of resource information for the server.
+	 * 
+	 * @param serverURI
+	 * @return {@link HDFSMetadataCache}
+	 */
+	public HDFSMetadataCache getMetadataCache(String serverURI) {
+		HDFSMetadataCache cache = metadataCacheMap.get(serverURI);
+		if (cache == null) {
+			HDFSMetadataCache created = new HDFSMetadataCache(serverURI);
+			cache = metadataCacheMap.putIfAbsent(serverURI, created);
+			if (cache == null)
+				cache = created;
+		}
+		return cache;
+	}
+
+	/**
+	 * Provides the user and groups as which the server is accessed.
+	 * 
+	 * @param serverURI
+	 * @return {@link HDFSIdentityCache}
+	 */
+	public HDFSIdentityCache getIdentityCache(String serverURI) {
+		HDFSIdentityCache cache = identityCacheMap.get(serverURI);
+		if (cache == null) {
+			HDFSIdentityCache created = new HDFSIdentityCache(serverURI);
+			cache = identityCacheMap.putIfAbsent(serverURI, created);
+			if (cache == null)
+				cache = created;
+		}
+		return cache;
+	}
+
+	/**
+	 * Closes the connections held by the server's client. The client stays
+	 * usable and reconnects when it is next used.
+	 * 
+	 * @param serverURI
+	 */
+	public void releaseClient(String serverURI) {
+		HDFSClient client = serverURI == null ? null : hdfsClientsMap.get(serverURI);
+		if (client == null)
+			return;
+		try {
+			client.disconnect(new java.net.URI(serverURI));
+		} catch (Exception e) {
+			logger.warn("Unable to release connections of " + serverURI, e);
+		}
+	}
+
+	/**
+	 * Disposes all clients. Called when the plugin stops.
+	 */
+	public void dispose() {
+		List<HDFSClient> clients;
+		synchronized (clientLock) {
+			clients = new ArrayList<HDFSClient>(hdfsClientsMap.values());
+			hdfsClientsMap.clear();
+		}
+		for (HDFSClient client : clients) {
+			try {
+				client.dispose();
+			} catch (Throwable t) {
+				logger.warn("Unable to dispose client", t);
+			}
+		}
+	}
+
 	/**
 	 * Provides the HDFSClient instance to
 	 * 
@@ -264,22 +351,30 @@ public class HDFSManager {
 				logger.debug("getClient(" + serverURI + "): Server timed out. Not returning client");
 			throw new CoreException(new Status(IStatus.WARNING, Activator.BUNDLE_ID, "Server disconnected due to timeout. Please reconnect to server."));
 		}
-		if (hdfsClientsMap.containsKey(serverURI))
-			return hdfsClientsMap.get(serverURI);
-		else {
+		String key = serverURI == null ? "" : serverURI;
+		HDFSClient client = hdfsClientsMap.get(key);
+		if (client != null)
+			return client;
+		synchronized (clientLock) {
+			client = hdfsClientsMap.get(key);
+			if (client != null)
+				return client;
 			try {
 				java.net.URI sUri = serverURI == null ? new java.net.URI("hdfs://server") : new java.net.URI(serverURI);
 				IConfigurationElement[] elementsFor = Platform.getExtensionRegistry().getConfigurationElementsFor("org.apache.hadoop.eclipse.hdfsClient");
+				IConfigurationElement clientElement = null;
 				for (IConfigurationElement element : elementsFor) {
-					if (sUri.getScheme().equals(element.getAttribute("protocol"))) {
-						HDFSClient client = (HDFSClient) element.createExecutableExtension("class");
-						hdfsClientsMap.put(serverURI, new InterruptableHDFSClient(serverURI, client));
-					}
+					if (sUri.getScheme().equals(element.getAttribute("protocol")))
+						clientElement = element;
+				}
+				if (clientElement != null) {
+					client = new InterruptableHDFSClient(serverURI, (HDFSClient) clientElement.createExecutableExtension("class"));
+					hdfsClientsMap.put(key, client);
 				}
 			} catch (URISyntaxException e) {
 				throw new CoreException(new Status(IStatus.ERROR, Activator.BUNDLE_ID, "Invalid server URI", e));
 			}
-			return hdfsClientsMap.get(serverURI);
+			return client;
 		}
 	}
 }
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.eclipse.hdfs.ResourceInformation;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.log4j.Logger;
+import org.eclipse.core.filesystem.provider.FileInfo;
+
+/**
+ * Server information of HDFS resources, keyed by resource URI. One cache
+ * exists per server, and is shared by all {@link HDFSFileStore} instances of
+ * that server, so that information fetched by one store is available to every
+ * other store of the same resource.
+ * <p>
+ * Entries expire after a time-to-live. Resources which do not exist on the
+ * server are cached too, with their own time-to-live, so that repeated lookups
+ * of missing paths do not reach the server. The least recently used entries are
+ * evicted when the cache holds more than the maximum number of entries, or
+ * more than the maximum estimated memory.
+ */
+public class HDFSMetadataCache {
+
+	private static final Logger logger = Logger.getLogger(HDFSMetadataCache.class);
+	private static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+	private static final int DEFAULT_MAX_ENTRIES = 10000;
+	private static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+	private static final long DEFAULT_NEGATIVE_TTL_MILLIS = 60 * 1000;
+
+	/**
+	 * Server information of a single resource.
+	 */
+	public static class Entry {
+		private final FileInfo fileInfo;
+		private final ResourceInformation resourceInfo;
+		private final ResourceInformation.Permissions effectivePermissions;
+		private final long created = System.currentTimeMillis();
+		private int estimatedSize;
+
+		public Entry(FileInfo fileInfo, ResourceInformation resourceInfo, ResourceInformation.Permissions effectivePermissions) {
+			this.fileInfo = fileInfo;
+			this.resourceInfo = resourceInfo;
+			this.effectivePermissions = effectivePermissions;
+		}
+
+		public FileInfo getFileInfo() {
+			return fileInfo;
+		}
+
+		/**
+		 * @return <code>null</code> when the resource does not exist on the
+		 *         server
+		 */
+		public ResourceInformation getResourceInfo() {
+			return resourceInfo;
+		}
+
+		public ResourceInformation.Permissions getEffectivePermissions() {
+			return effectivePermissions;
+		}
+
+		/**
+		 * @return <code>true</code> when the resource does not exist on the
+		 *         server
+		 */
+		public boolean isNegative() {
+			return !fileInfo.exists();
+		}
+	}
+
+	private final String serverURI;
+	private final long ttlMillis;
+	private final long negativeTtlMillis;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long estimatedBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public HDFSMetadataCache(String serverURI) {
+		this(serverURI, HadoopPreferences.getLong(HadoopPreferences.HDFS_METADATA_CACHE_TTL, DEFAULT_TTL_MILLIS), HadoopPreferences.getLong(
+				HadoopPreferences.HDFS_METADATA_CACHE_NEGATIVE_TTL, DEFAULT_NEGATIVE_TTL_MILLIS), HadoopPreferences.getInt(
+				HadoopPreferences.HDFS_METADATA_CACHE_ENTRIES, DEFAULT_MAX_ENTRIES), HadoopPreferences.getLong(HadoopPreferences.HDFS_METADATA_CACHE_MEMORY,
+				DEFAULT_MAX_BYTES));
+	}
+
+	public HDFSMetadataCache(String serverURI, long ttlMillis, long negativeTtlMillis, int maxEntries, long maxBytes) {
+		this.serverURI = serverURI;
+		this.ttlMillis = ttlMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param uri
+	 * @return the entry of the resource, or <code>null</code> when it is not
+	 *         cached or has expired
+	 */
+	public synchronized Entry get(String uri) {
+		Entry entry = entries.get(uri);
+		if (entry != null && System.currentTimeMillis() - entry.created >= (entry.isNegative() ? negativeTtlMillis : ttlMillis)) {
+			remove(uri);
+			entry = null;
+		}
+		if (entry == null)
+			misses++;
+		else
+			hits++;
+		return entry;
+	}
+
+	/**
+	 * Like {@link #get(String)}, but without counting a hit or miss.
+	 *
+	 * @param uri
+	 * @return <code>true</code> when the resource has an entry which has not
+	 *         expired
+	 */
+	public synchronized boolean contains(String uri) {
+		Entry entry = entries.get(uri);
+		return entry != null && System.currentTimeMillis() - entry.created < (entry.isNegative() ? negativeTtlMillis : ttlMillis);
+	}
+
+	public synchronized void put(String uri, Entry entry) {
+		if ((entry.isNegative() ? negativeTtlMillis : ttlMillis) <= 0 || maxEntries <= 0)
+			return;
+		remove(uri);
+		entry.estimatedSize = estimateSize(uri, entry);
+		entries.put(uri, entry);
+		estimatedBytes += entry.estimatedSize;
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || estimatedBytes > maxBytes) && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			it.remove();
+			estimatedBytes -= eldest.estimatedSize;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes the entry of the resource.
+	 *
+	 * @param uri
+	 */
+	public synchronized void invalidate(String uri) {
+		remove(uri);
+	}
+
+	/**
+	 * Removes the entry of the resource, and the entries of its parents which
+	 * are remembered as not existing. Used when the resource is created,
+	 * since its missing parents are created with it.
+	 *
+	 * @param uri
+	 */
+	public synchronized void invalidateCreated(String uri) {
+		remove(uri);
+		String parent = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+		int index = parent.lastIndexOf('/');
+		while (index > 0) {
+			parent = parent.substring(0, index);
+			removeNegative(parent);
+			removeNegative(parent + "/");
+			index = parent.lastIndexOf('/');
+		}
+	}
+
+	/**
+	 * Removes the entries of the resource and of all resources below it.
+	 *
+	 * @param uri
+	 */
+	public synchronized void invalidateSubtree(String uri) {
+		remove(uri);
+		String prefix = uri.endsWith("/") ? uri : uri + "/";
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> e = it.next();
+			if (e.getKey().startsWith(prefix)) {
+				it.remove();
+				estimatedBytes -= e.getValue().estimatedSize;
+			}
+		}
+	}
+
+	/**
+	 * Moves the entries below a renamed resource to its new location. Entries
+	 * of the resource itself, of its old and new parents, and parents
+	 * remembered as missing at the new location are removed, since renaming
+	 * changes them.
+	 *
+	 * @param from
+	 * @param to
+	 */
+	public synchronized void moveSubtree(String from, String to) {
+		String fromPrefix = from.endsWith("/") ? from : from + "/";
+		String toPrefix = to.endsWith("/") ? to : to + "/";
+		invalidateSubtree(to);
+		Map<String, Entry> moved = new LinkedHashMap<String, Entry>();
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> e = it.next();
+			if (e.getKey().startsWith(fromPrefix)) {
+				it.remove();
+				estimatedBytes -= e.getValue().estimatedSize;
+				moved.put(toPrefix + e.getKey().substring(fromPrefix.length()), e.getValue());
+			}
+		}
+		for (Map.Entry<String, Entry> e : moved.entrySet()) {
+			Entry entry = e.getValue();
+			entry.estimatedSize = estimateSize(e.getKey(), entry);
+			entries.put(e.getKey(), entry);
+			estimatedBytes += entry.estimatedSize;
+		}
+		remove(from);
+		invalidateCreated(to);
+		for (String parent : new String[] { getParent(from), getParent(to) }) {
+			remove(parent);
+			remove(parent + "/");
+		}
+	}
+
+	private static String getParent(String uri) {
+		String path = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+		int index = path.lastIndexOf('/');
+		return index > 0 ? path.substring(0, index) : path;
+	}
+
+	public synchronized void invalidateAll() {
+		if (logger.isDebugEnabled())
+			logger.debug("invalidateAll(" + serverURI + "): " + this);
+		entries.clear();
+		estimatedBytes = 0;
+	}
+
+	private void removeNegative(String uri) {
+		Entry entry = entries.get(uri);
+		if (entry != null && entry.isNegative())
+			remove(uri);
+	}
+
+	private void remove(String uri) {
+		Entry entry = entries.remove(uri);
+		if (entry != null)
+			estimatedBytes -= entry.estimatedSize;
+	}
+
+	private static int estimateSize(String uri, Entry entry) {
+		// Rough size of the entry, its FileInfo and ResourceInformation
+		// objects, plus their strings.
+		int size = 300 + 2 * uri.length();
+		ResourceInformation ri = entry.resourceInfo;
+		if (ri != null)
+			size += 2 * (length(ri.getName()) + length(ri.getPath()) + length(ri.getOwner()) + length(ri.getGroup()));
+		return size;
+	}
+
+	private static int length(String s) {
+		return s == null ? 0 : s.length();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "entries=" + entries.size() + ", bytes=" + estimatedBytes + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+	}
+}
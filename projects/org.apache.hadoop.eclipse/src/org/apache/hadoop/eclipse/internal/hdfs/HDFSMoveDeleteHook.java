@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.eclipse.internal.hdfs;
 
+import java.net.URI;
+
+import org.apache.log4j.Logger;
+import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
@@ -25,6 +29,7 @@ import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.team.IMoveDeleteHook;
 import org.eclipse.core.resources.team.IResourceTree;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 
 /**
@@ -33,6 +38,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
  */
 public class HDFSMoveDeleteHook implements IMoveDeleteHook {
 
+	private final static Logger logger = Logger.getLogger(HDFSMoveDeleteHook.class);
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -56,7 +63,25 @@ public class HDFSMoveDeleteHook implements IMoveDeleteHook {
 	 */
 	@Override
 	public boolean deleteFolder(IResourceTree tree, IFolder folder, int updateFlags, IProgressMonitor monitor) {
-		return false;
+		URI uri = folder.getLocationURI();
+		if (uri == null || !HDFSFileSystem.SCHEME.equals(uri.getScheme()))
+			return false;
+		// One recursive delete on the server and locally, instead of one per
+		// resource. Local history is not kept, since it would download every
+		// file first. Resources out of sync are not checked for, even without
+		// FORCE, as that would list every folder of the tree on the server.
+		// The whole tree is deleted on both sides, so none are left behind.
+		monitor.beginTask("Deleting " + uri, 1);
+		try {
+			EFS.getStore(uri).delete(EFS.NONE, monitor);
+			tree.deletedFolder(folder);
+		} catch (CoreException e) {
+			logger.warn(e.getMessage(), e);
+			tree.failed(e.getStatus());
+		} finally {
+			monitor.done();
+		}
+		return true;
 	}
 
 	/*
@@ -92,7 +117,7 @@ public class HDFSMoveDeleteHook implements IMoveDeleteHook {
 	 */
 	@Override
 	public boolean moveFile(IResourceTree tree, IFile source, IFile destination, int updateFlags, IProgressMonitor monitor) {
-		return false;
+		return moveOnServer(tree, source, destination, updateFlags, monitor);
 	}
 
 	/*
@@ -106,7 +131,40 @@ public class HDFSMoveDeleteHook implements IMoveDeleteHook {
 	 */
 	@Override
 	public boolean moveFolder(IResourceTree tree, IFolder source, IFolder destination, int updateFlags, IProgressMonitor monitor) {
-		return false;
+		return moveOnServer(tree, source, destination, updateFlags, monitor);
+	}
+
+	/**
+	 * Renames the resource on the server when the destination is on the same
+	 * server, so that its content is not copied through the workspace.
+	 * 
+	 * @return <code>false</code> when the workspace has to move the resource
+	 */
+	private boolean moveOnServer(IResourceTree tree, IResource source, IResource destination, int updateFlags, IProgressMonitor monitor) {
+		URI sourceURI = source.getLocationURI();
+		URI destinationURI = destination.getLocationURI();
+		if (sourceURI == null || destinationURI == null || !HDFSFileSystem.SCHEME.equals(sourceURI.getScheme())
+				|| !HDFSFileSystem.SCHEME.equals(destinationURI.getScheme()))
+			return false;
+		// The workspace reports resources out of sync
+		if ((updateFlags & IResource.FORCE) == 0 && !tree.isSynchronized(source, IResource.DEPTH_INFINITE))
+			return false;
+		monitor.beginTask("Moving " + sourceURI, 1);
+		try {
+			HDFSFileStore store = (HDFSFileStore) EFS.getStore(sourceURI);
+			if (!store.rename((HDFSFileStore) EFS.getStore(destinationURI), EFS.NONE))
+				return false;
+			if (source.getType() == IResource.FILE)
+				tree.movedFile((IFile) source, (IFile) destination);
+			else
+				tree.movedFolderSubtree((IFolder) source, (IFolder) destination);
+		} catch (CoreException e) {
+			logger.warn(e.getMessage(), e);
+			tree.failed(e.getStatus());
+		} finally {
+			monitor.done();
+		}
+		return true;
 	}
 
 	/*
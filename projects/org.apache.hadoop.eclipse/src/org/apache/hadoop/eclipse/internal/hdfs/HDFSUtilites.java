@@ -19,8 +19,12 @@
 package org.apache.hadoop.eclipse.internal.hdfs;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
 
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
 
@@ -30,6 +34,80 @@ import org.eclipse.core.filesystem.IFileInfo;
  */
 public class HDFSUtilites {
 
+	private static final String DEFAULT_LOCAL_METADATA_NAMES = ".project,.settings,.classpath,.externalToolBuilders,.cproject,.pydevproject,.factorypath,.buildpath";
+	private static Pattern[] localMetadataPatterns = null;
+
+	/**
+	 * Eclipse metadata files and folders of HDFS projects live only in the
+	 * workspace, and are never looked up on the server. The names are taken
+	 * from the <code>hdfsLocalMetadataNames</code> preference, a comma
+	 * separated list where <code>*</code> matches any characters. Only
+	 * resources directly in the project root, and their children, are
+	 * metadata. Server resources of the same names further down belong to the
+	 * server.
+	 * 
+	 * @param rootPath
+	 *            path of the server root, which is the project
+	 * @param path
+	 *            path of the resource
+	 * @return <code>true</code> when the resource, or one of its parents, is
+	 *         Eclipse metadata of the project
+	 */
+	public static boolean isLocalMetadata(String rootPath, String path) {
+		if (rootPath == null || path == null)
+			return false;
+		String root = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+		if (!path.startsWith(root) || path.length() == root.length())
+			return false;
+		int end = path.indexOf('/', root.length());
+		String segment = end < 0 ? path.substring(root.length()) : path.substring(root.length(), end);
+		for (Pattern pattern : getLocalMetadataPatterns()) {
+			if (pattern.matcher(segment).matches())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles a file name pattern, where <code>*</code> matches any
+	 * characters and <code>?</code> matches a single character.
+	 * 
+	 * @param glob
+	 * @return {@link Pattern}
+	 */
+	public static Pattern compileGlob(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else
+				literal.append(c);
+		}
+		if (literal.length() > 0)
+			regex.append(Pattern.quote(literal.toString()));
+		return Pattern.compile(regex.toString());
+	}
+
+	private static synchronized Pattern[] getLocalMetadataPatterns() {
+		if (localMetadataPatterns == null) {
+			List<Pattern> patterns = new ArrayList<Pattern>();
+			String names = HadoopPreferences.getString(HadoopPreferences.HDFS_LOCAL_METADATA_NAMES, DEFAULT_LOCAL_METADATA_NAMES);
+			for (String name : names.split(",")) {
+				name = name.trim();
+				if (name.length() > 0)
+					patterns.add(compileGlob(name));
+			}
+			localMetadataPatterns = patterns.toArray(new Pattern[patterns.size()]);
+		}
+		return localMetadataPatterns;
+	}
+
 	public static String getDebugMessage(IFileInfo fi) {
 		if (fi != null) {
 			String lastMod = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.LONG).format(new Date(fi.getLastModified()));
@@ -24,9 +24,18 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.eclipse.hdfs.HDFSClient;
+import org.apache.hadoop.eclipse.hdfs.ResourceChecksum;
 import org.apache.hadoop.eclipse.hdfs.ResourceInformation;
+import org.apache.hadoop.eclipse.hdfs.ResourceListing;
+import org.apache.hadoop.eclipse.hdfs.UploadOptions;
+import org.apache.hadoop.eclipse.internal.ServerCallExecutor;
 import org.apache.hadoop.eclipse.internal.model.HDFSServer;
 import org.apache.hadoop.eclipse.internal.model.ServerStatus;
 import org.apache.log4j.Logger;
@@ -41,12 +50,13 @@ import org.eclipse.core.resources.ResourcesPlugin;
 public class InterruptableHDFSClient extends HDFSClient {
 	private static final int DEFAULT_TIMEOUT = 5000;
 	private static final Logger logger = Logger.getLogger(InterruptableHDFSClient.class);
-	// private static ExecutorService threadPool =
-	// Executors.newFixedThreadPool(10);
 
 	private final HDFSClient client;
 	private final int timeoutMillis = DEFAULT_TIMEOUT;
 	private final String serverURI;
+	private final ConcurrentHashMap<String, SharedCall<?>> sharedCalls = new ConcurrentHashMap<String, SharedCall<?>>();
+	private final ConcurrentHashMap<String, SharedListing> sharedListings = new ConcurrentHashMap<String, SharedListing>();
+	private final AtomicLong joinedCalls = new AtomicLong();
 
 	/**
 	 * @param serverURI
@@ -62,46 +72,161 @@ public class InterruptableHDFSClient extends HDFSClient {
 	}
 
 	protected <T> T executeWithTimeout(final CustomRunnable<T> runnable) throws IOException, InterruptedException {
-		final List<T> data = new ArrayList<T>();
-		final IOException[] ioE = new IOException[1];
-		final InterruptedException[] inE = new InterruptedException[1];
-		Thread runnerThread = new Thread(new Runnable() {
-			public void run() {
-				try {
-					data.add(runnable.run());
-				} catch (IOException e) {
-					ioE[0] = e;
-				} catch (InterruptedException e) {
-					inE[0] = e;
-				}
+		final ServerCallExecutor executor = ServerCallExecutor.INSTANCE;
+		Future<T> future = executor.submit(serverURI, new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return runnable.run();
 			}
 		});
-		boolean interrupted = false;
-		runnerThread.start();
-		runnerThread.join(timeoutMillis);
-		if (runnerThread.isAlive()) {
-			if(logger.isDebugEnabled())
+		try {
+			return executor.get(future, timeoutMillis);
+		} catch (TimeoutException e) {
+			serverTimedOut();
+			throw new InterruptedException();
+		} catch (InterruptedException e) {
+			if (logger.isDebugEnabled())
 				logger.debug("executeWithTimeout(): Interrupting server call");
-			runnerThread.interrupt();
-			interrupted = true;
+			future.cancel(true);
+			throw e;
 		}
-		if (ioE[0] != null)
-			throw ioE[0];
-		if (inE[0] != null)
-			throw inE[0];
-		if (interrupted) {
-			// Tell HDFS manager that the server timed out
-			if(logger.isDebugEnabled())
-				logger.debug("executeWithTimeout(): Server timed out: "+serverURI);
-			HDFSServer server = HDFSManager.INSTANCE.getServer(serverURI);
-			String projectName = HDFSManager.INSTANCE.getProjectName(server);
-			IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
-			HDFSManager.disconnectProject(project);
+	}
+
+	/**
+	 * Like {@link #executeWithTimeout(CustomRunnable)}, except that callers
+	 * asking for the same key while a call is running wait for that call
+	 * instead of making their own. Each caller waits at most the timeout. The
+	 * call is cancelled when a caller times out, or when every caller has
+	 * been interrupted. All callers get the same result, so callers copy
+	 * results they hand out.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> T executeShared(String key, final CustomRunnable<T> runnable) throws IOException, InterruptedException {
+		SharedCall<T> call;
+		while (true) {
+			call = (SharedCall<T>) sharedCalls.get(key);
+			if (call == null) {
+				SharedCall<T> newCall = new SharedCall<T>(key, runnable);
+				newCall.join();
+				// Published before it is submitted, so that only one caller
+				// makes the call
+				call = (SharedCall<T>) sharedCalls.putIfAbsent(key, newCall);
+				if (call == null) {
+					call = newCall;
+					call.submit();
+					break;
+				}
+				// Another caller was quicker
+			}
+			if (call.join()) {
+				joinedCalls.incrementAndGet();
+				if (logger.isDebugEnabled())
+					logger.debug("executeShared(): Joined running call " + key);
+				break;
+			}
+			// Finished while we were looking
+			sharedCalls.remove(key, call);
+		}
+		try {
+			return ServerCallExecutor.INSTANCE.get(call.getFuture(), timeoutMillis);
+		} catch (TimeoutException e) {
+			serverTimedOut();
 			throw new InterruptedException();
+		} finally {
+			call.leave();
+		}
+	}
+
+	private void serverTimedOut() {
+		// Tell HDFS manager that the server timed out
+		if (logger.isDebugEnabled())
+			logger.debug("executeWithTimeout(): Server timed out: " + serverURI);
+		HDFSServer server = HDFSManager.INSTANCE.getServer(serverURI);
+		String projectName = HDFSManager.INSTANCE.getProjectName(server);
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+		HDFSManager.disconnectProject(project);
+	}
+
+	/**
+	 * @return number of calls which were served by an already running call
+	 */
+	public long getJoinedCalls() {
+		return joinedCalls.get();
+	}
+
+	/**
+	 * A call whose result is delivered to every caller waiting on it.
+	 */
+	private class SharedCall<T> implements Callable<T> {
+		private final String key;
+		private final CustomRunnable<T> runnable;
+		/**
+		 * Set once submitted, after the call was published to other callers
+		 */
+		private Future<T> future;
+		private IOException submitFailure;
+		private int waiters = 0;
+
+		SharedCall(String key, CustomRunnable<T> runnable) {
+			this.key = key;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public T call() throws Exception {
+			try {
+				return runnable.run();
+			} finally {
+				sharedCalls.remove(key, this);
+			}
+		}
+
+		void submit() {
+			Future<T> submitted = null;
+			IOException failure = null;
+			try {
+				submitted = ServerCallExecutor.INSTANCE.submit(serverURI, this);
+			} catch (IOException e) {
+				failure = e;
+				sharedCalls.remove(key, this);
+			}
+			synchronized (this) {
+				future = submitted;
+				submitFailure = failure;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Waits until the call was submitted.
+		 * 
+		 * @throws IOException
+		 *             when it could not be submitted
+		 */
+		synchronized Future<T> getFuture() throws IOException, InterruptedException {
+			while (future == null && submitFailure == null)
+				wait();
+			if (future == null)
+				throw new IOException(submitFailure.getMessage(), submitFailure);
+			return future;
+		}
+
+		synchronized boolean join() {
+			if (submitFailure != null || (future != null && future.isDone()))
+				return false;
+			waiters++;
+			return true;
+		}
+
+		synchronized void leave() {
+			waiters--;
+			if (waiters == 0 && future != null && !future.isDone()) {
+				if (logger.isDebugEnabled())
+					logger.debug("leave(): No callers left, cancelling " + key);
+				sharedCalls.remove(key, this);
+				future.cancel(true);
+			}
 		}
-		if (data.size() > 0)
-			return data.get(0);
-		return null;
 	}
 
 	/*
@@ -129,12 +254,14 @@ public class InterruptableHDFSClient extends HDFSClient {
 	 */
 	@Override
 	public ResourceInformation getResourceInformation(final URI uri, final String user) throws IOException, InterruptedException {
-		return executeWithTimeout(new CustomRunnable<ResourceInformation>() {
+		ResourceInformation information = executeShared("getResourceInformation:" + uri + "#" + user, new CustomRunnable<ResourceInformation>() {
 			@Override
 			public ResourceInformation run() throws IOException, InterruptedException {
 				return client.getResourceInformation(uri, user);
 			}
 		});
+		// Every caller gets its own copy, as callers update it
+		return information == null ? null : new ResourceInformation(information);
 	}
 
 	/*
@@ -165,12 +292,199 @@ public class InterruptableHDFSClient extends HDFSClient {
 	 */
 	@Override
 	public List<ResourceInformation> listResources(final URI uri, final String user) throws IOException, InterruptedException {
-		return executeWithTimeout(new CustomRunnable<List<ResourceInformation>>() {
+		List<ResourceInformation> resources = executeShared("listResources:" + uri + "#" + user, new CustomRunnable<List<ResourceInformation>>() {
 			@Override
 			public List<ResourceInformation> run() throws IOException, InterruptedException {
 				return client.listResources(uri, user);
 			}
 		});
+		if (resources == null)
+			return null;
+		// Every caller gets its own copies, as callers update them
+		List<ResourceInformation> copies = new ArrayList<ResourceInformation>(resources.size());
+		for (ResourceInformation resource : resources)
+			copies.add(resource == null ? null : new ResourceInformation(resource));
+		return copies;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#openListing(java.net.URI,
+	 * java.lang.String, int)
+	 */
+	@Override
+	public ResourceListing openListing(final URI uri, final String user, final int pageSize) throws IOException, InterruptedException {
+		String key = uri + "#" + user + "#" + pageSize;
+		while (true) {
+			SharedListing shared = sharedListings.get(key);
+			if (shared != null && shared.join()) {
+				joinedCalls.incrementAndGet();
+				if (logger.isDebugEnabled())
+					logger.debug("openListing(): Joined running listing " + key);
+				return shared.newReader();
+			}
+			SharedListing created = new SharedListing(key, openTimedListing(uri, user, pageSize));
+			created.join();
+			shared = sharedListings.putIfAbsent(key, created);
+			if (shared == null)
+				return created.newReader();
+			// Another caller was quicker
+			created.leave();
+		}
+	}
+
+	/**
+	 * Opens the listing with a timeout, and gives every page its own timeout,
+	 * so large folders do not time out. A listing which is opened after the
+	 * caller gave up is closed.
+	 */
+	private ResourceListing openTimedListing(final URI uri, final String user, final int pageSize) throws IOException, InterruptedException {
+		final Object lock = new Object();
+		final ResourceListing[] opened = new ResourceListing[1];
+		final boolean[] abandoned = new boolean[1];
+		final ResourceListing listing;
+		boolean done = false;
+		try {
+			listing = executeWithTimeout(new CustomRunnable<ResourceListing>() {
+				@Override
+				public ResourceListing run() throws IOException, InterruptedException {
+					ResourceListing listing = client.openListing(uri, user, pageSize);
+					synchronized (lock) {
+						if (!abandoned[0]) {
+							opened[0] = listing;
+							return listing;
+						}
+					}
+					listing.close();
+					throw new InterruptedException();
+				}
+			});
+			done = true;
+		} finally {
+			if (!done) {
+				ResourceListing late;
+				synchronized (lock) {
+					abandoned[0] = true;
+					late = opened[0];
+				}
+				if (late != null)
+					late.close();
+			}
+		}
+		return new ResourceListing() {
+			@Override
+			public List<ResourceInformation> nextPage() throws IOException, InterruptedException {
+				return executeWithTimeout(new CustomRunnable<List<ResourceInformation>>() {
+					@Override
+					public List<ResourceInformation> run() throws IOException, InterruptedException {
+						return listing.nextPage();
+					}
+				});
+			}
+
+			@Override
+			public void close() throws IOException {
+				listing.close();
+			}
+		};
+	}
+
+	/**
+	 * A listing read by every caller who asks for the same folder while it is
+	 * open. Pages are fetched once, by whichever reader first needs them, and
+	 * are kept until all readers are closed. Every reader gets its own copies
+	 * of the entries, as callers update them.
+	 */
+	private class SharedListing {
+		private final String key;
+		private final ResourceListing listing;
+		private final List<List<ResourceInformation>> pages = new ArrayList<List<ResourceInformation>>();
+		private int readers = 0;
+		private boolean exhausted = false;
+		private String failure = null;
+		private boolean closed = false;
+
+		SharedListing(String key, ResourceListing listing) {
+			this.key = key;
+			this.listing = listing;
+		}
+
+		/**
+		 * @return <code>false</code> when the listing can no longer be joined
+		 */
+		synchronized boolean join() {
+			if (closed || exhausted || failure != null)
+				return false;
+			readers++;
+			return true;
+		}
+
+		synchronized void leave() throws IOException {
+			readers--;
+			if (readers == 0 && !closed) {
+				closed = true;
+				pages.clear();
+				sharedListings.remove(key, this);
+				listing.close();
+			}
+		}
+
+		synchronized List<ResourceInformation> getPage(int index) throws IOException, InterruptedException {
+			while (index >= pages.size()) {
+				if (exhausted)
+					return null;
+				if (failure != null)
+					throw new IOException(failure);
+				boolean fetched = false;
+				try {
+					List<ResourceInformation> page = listing.nextPage();
+					if (page == null) {
+						exhausted = true;
+						sharedListings.remove(key, this);
+					} else
+						pages.add(page);
+					fetched = true;
+				} finally {
+					if (!fetched) {
+						// The listing cannot be continued, by any reader
+						failure = "Listing failed: " + key;
+						sharedListings.remove(key, this);
+					}
+				}
+			}
+			List<ResourceInformation> page = pages.get(index);
+			List<ResourceInformation> copies = new ArrayList<ResourceInformation>(page.size());
+			for (ResourceInformation resource : page)
+				copies.add(resource == null ? null : new ResourceInformation(resource));
+			return copies;
+		}
+
+		ResourceListing newReader() {
+			return new ResourceListing() {
+				private int next = 0;
+				private boolean readerClosed = false;
+
+				@Override
+				public List<ResourceInformation> nextPage() throws IOException, InterruptedException {
+					if (readerClosed)
+						throw new IOException("Listing closed: " + key);
+					List<ResourceInformation> page = getPage(next);
+					if (page != null)
+						next++;
+					return page;
+				}
+
+				@Override
+				public void close() throws IOException {
+					if (!readerClosed) {
+						readerClosed = true;
+						leave();
+					}
+				}
+			};
+		}
 	}
 
 	/*
@@ -190,6 +504,23 @@ public class InterruptableHDFSClient extends HDFSClient {
 		});
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#openInputStream(java.net.URI,
+	 * java.lang.String, long)
+	 */
+	@Override
+	public InputStream openInputStream(final URI uri, final String user, final long offset) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<InputStream>() {
+			@Override
+			public InputStream run() throws IOException, InterruptedException {
+				return client.openInputStream(uri, user, offset);
+			}
+		});
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -223,6 +554,38 @@ public class InterruptableHDFSClient extends HDFSClient {
 		});
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getFileChecksum(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public ResourceChecksum getFileChecksum(final URI uri, final String user) throws IOException, InterruptedException {
+		// Contacts a datanode for every block, which takes longer than the
+		// timeout on large files without the server being unavailable. Runs
+		// in the calling thread, so that it holds no server call slot.
+		return client.getFileChecksum(uri, user);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#appendOutputStream(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public OutputStream appendOutputStream(final URI uri, final String user) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<OutputStream>() {
+			@Override
+			public OutputStream run() throws IOException, InterruptedException {
+				return client.appendOutputStream(uri, user);
+			}
+		});
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -235,7 +598,7 @@ public class InterruptableHDFSClient extends HDFSClient {
 		return executeWithTimeout(new CustomRunnable<OutputStream>() {
 			@Override
 			public OutputStream run() throws IOException, InterruptedException {
-				return client.openOutputStream(uri, user);
+				return client.createOutputStream(uri, user);
 			}
 		});
 	}
@@ -243,18 +606,123 @@ public class InterruptableHDFSClient extends HDFSClient {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#delete(java.net.URI,
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#createOutputStream(java.net
+	 * .URI, java.lang.String, org.apache.hadoop.eclipse.hdfs.UploadOptions)
+	 */
+	@Override
+	public OutputStream createOutputStream(final URI uri, final String user, final UploadOptions options) throws IOException,
+			InterruptedException {
+		return executeWithTimeout(new CustomRunnable<OutputStream>() {
+			@Override
+			public OutputStream run() throws IOException, InterruptedException {
+				return client.createOutputStream(uri, user, options);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#rename(java.net.URI,
+	 * java.net.URI, java.lang.String)
+	 */
+	@Override
+	public boolean rename(final URI uri, final URI destination, final String user) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<Boolean>() {
+			@Override
+			public Boolean run() throws IOException, InterruptedException {
+				return client.rename(uri, destination, user);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#setReplication(java.net.URI,
+	 * java.lang.String, short)
+	 */
+	@Override
+	public boolean setReplication(final URI uri, final String user, final short replication) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<Boolean>() {
+			@Override
+			public Boolean run() throws IOException, InterruptedException {
+				return client.setReplication(uri, user, replication);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getDefaultReplication(java.
+	 * net.URI, java.lang.String)
+	 */
+	@Override
+	public short getDefaultReplication(final URI uri, final String user) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<Short>() {
+			@Override
+			public Short run() throws IOException, InterruptedException {
+				return client.getDefaultReplication(uri, user);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.hadoop.eclipse.hdfs.HDFSClient#getMinReplicas(java.net.URI,
 	 * java.lang.String)
 	 */
 	@Override
-	public void delete(final URI uri, final String user) throws IOException, InterruptedException {
-		executeWithTimeout(new CustomRunnable<Object>() {
+	public int getMinReplicas(final URI uri, final String user) throws IOException, InterruptedException {
+		return executeWithTimeout(new CustomRunnable<Integer>() {
 			@Override
-			public Object run() throws IOException, InterruptedException {
-				client.delete(uri, user);
-				return null;
+			public Integer run() throws IOException, InterruptedException {
+				return client.getMinReplicas(uri, user);
 			}
 		});
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#delete(java.net.URI,
+	 * java.lang.String)
+	 */
+	@Override
+	public void delete(final URI uri, final String user) throws IOException, InterruptedException {
+		// Deleting a large tree holds the namesystem lock for longer than
+		// the timeout, while the server keeps deleting. Like the checksum,
+		// runs in the calling thread without a timeout.
+		client.delete(uri, user);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#disconnect(java.net.URI)
+	 */
+	@Override
+	public void disconnect(URI uri) throws IOException {
+		// Runs on the caller's thread. It should not wait behind calls that
+		// are stuck on the server being released.
+		ServerCallExecutor.INSTANCE.failPending(serverURI, new IOException("Disconnected from server " + serverURI));
+		client.disconnect(uri);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.eclipse.hdfs.HDFSClient#dispose()
+	 */
+	@Override
+	public void dispose() {
+		client.dispose();
+	}
+
 }
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.eclipse.hdfs.ResourceChecksum;
+import org.apache.log4j.Logger;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Computes the HDFS checksum of local files, so that they can be compared with
+ * server files without transferring them. Checksums are cached by path,
+ * length and modification time of the file.
+ */
+public class LocalChecksum {
+
+	private static final Logger logger = Logger.getLogger(LocalChecksum.class);
+	private static final int MAX_CACHED = 4096;
+
+	private static final Map<String, ResourceChecksum> cache = new LinkedHashMap<String, ResourceChecksum>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResourceChecksum> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private LocalChecksum() {
+	}
+
+	/**
+	 * Determines if the local file has the same content as the server file,
+	 * by comparing lengths and then checksums.
+	 *
+	 * @param store
+	 * @param localFile
+	 * @return <code>false</code> when they differ, or cannot be compared
+	 */
+	static boolean isSameContent(HDFSFileStore store, File localFile) {
+		if (!localFile.isFile())
+			return false;
+		try {
+			// fetchInfo() would describe the local file
+			IFileInfo serverInfo = store.fetchServerInfo();
+			if (!serverInfo.exists() || serverInfo.isDirectory() || serverInfo.getLength() != localFile.length())
+				return false;
+			ResourceChecksum serverChecksum = store.getServerChecksum();
+			if (serverChecksum == null)
+				return false;
+			ResourceChecksum localChecksum = get(localFile, serverChecksum.getBytesPerCrc(), serverChecksum.getCrcPerBlock());
+			boolean same = serverChecksum.equals(localChecksum);
+			if (logger.isDebugEnabled())
+				logger.debug("[" + store.toURI() + "]: isSameContent(): " + same + ", server=" + serverChecksum + ", local=" + localChecksum);
+			return same;
+		} catch (CoreException e) {
+			logger.debug(e.getMessage(), e);
+		} catch (IOException e) {
+			logger.debug(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * @param file
+	 * @param bytesPerCrc
+	 * @param crcPerBlock
+	 *            0 when the file is a single block
+	 * @return the checksum of the file, as HDFS computes it for the same
+	 *         content
+	 * @throws IOException
+	 */
+	static ResourceChecksum get(File file, int bytesPerCrc, long crcPerBlock) throws IOException {
+		String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|" + bytesPerCrc + "|" + crcPerBlock;
+		synchronized (cache) {
+			ResourceChecksum checksum = cache.get(key);
+			if (checksum != null)
+				return checksum;
+		}
+		ResourceChecksum checksum = compute(file, bytesPerCrc, crcPerBlock);
+		synchronized (cache) {
+			cache.put(key, checksum);
+		}
+		return checksum;
+	}
+
+	/**
+	 * The CRC32 of every chunk of bytesPerCrc bytes is added to the MD5 of
+	 * its block, and the MD5s of all blocks make up the MD5 of the file.
+	 */
+	public static ResourceChecksum compute(File file, int bytesPerCrc, long crcPerBlock) throws IOException {
+		if (bytesPerCrc <= 0)
+			throw new IOException("Invalid bytes per checksum: " + bytesPerCrc);
+		MessageDigest fileMd5;
+		MessageDigest blockMd5;
+		try {
+			fileMd5 = MessageDigest.getInstance("MD5");
+			blockMd5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		long blockSize = crcPerBlock > 0 ? crcPerBlock * bytesPerCrc : Long.MAX_VALUE;
+		CRC32 crc = new CRC32();
+		byte[] crcBytes = new byte[4];
+		byte[] chunk = new byte[bytesPerCrc];
+		int chunkLength = 0;
+		long blockLength = 0;
+		FileChannel channel = new FileInputStream(file).getChannel();
+		ByteBuffer buffer = BufferPool.INSTANCE.acquire();
+		try {
+			while (BufferPool.readFully(channel, buffer) > 0) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					int count = Math.min(buffer.remaining(), bytesPerCrc - chunkLength);
+					buffer.get(chunk, chunkLength, count);
+					chunkLength += count;
+					if (chunkLength == bytesPerCrc) {
+						addCrc(crc, chunk, chunkLength, crcBytes, blockMd5);
+						blockLength += chunkLength;
+						chunkLength = 0;
+						if (blockLength == blockSize) {
+							fileMd5.update(blockMd5.digest());
+							blockLength = 0;
+						}
+					}
+				}
+				buffer.clear();
+			}
+		} finally {
+			BufferPool.INSTANCE.release(buffer);
+			channel.close();
+		}
+		if (chunkLength > 0) {
+			addCrc(crc, chunk, chunkLength, crcBytes, blockMd5);
+			blockLength += chunkLength;
+		}
+		if (blockLength > 0)
+			fileMd5.update(blockMd5.digest());
+		return new ResourceChecksum(bytesPerCrc, crcPerBlock, fileMd5.digest());
+	}
+
+	private static void addCrc(CRC32 crc, byte[] chunk, int length, byte[] crcBytes, MessageDigest blockMd5) {
+		crc.reset();
+		crc.update(chunk, 0, length);
+		int value = (int) crc.getValue();
+		crcBytes[0] = (byte) (value >>> 24);
+		crcBytes[1] = (byte) (value >>> 16);
+		crcBytes[2] = (byte) (value >>> 8);
+		crcBytes[3] = (byte) value;
+		blockMd5.update(crcBytes);
+	}
+}
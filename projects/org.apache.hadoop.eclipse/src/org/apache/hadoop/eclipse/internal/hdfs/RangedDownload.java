@@ -0,0 +1,283 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.log4j.Logger;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Downloads a server file into its local file. Large files are split into
+ * ranges of a chunk size, which are fetched concurrently by separate streams
+ * opened at the start of each range. Every range is written at its position
+ * in a part file, which is allocated to its full length up front, and replaces
+ * the local file once complete.
+ * <p>
+ * Ranges are written in segments, each recorded in a {@link TransferJournal}
+ * once written. When a download of the same server file was interrupted
+ * earlier, the segments already written are not fetched again.
+ * <p>
+ * Progress is reported in kilobytes from the calling thread, so files larger
+ * than 2 GB report correctly. All streams share one {@link TransferThrottle}.
+ * Ranges of all downloads are fetched by a shared pool of at most
+ * <code>hdfsDownloadMaxStreams</code> threads.
+ */
+class RangedDownload {
+
+	private static final Logger logger = Logger.getLogger(RangedDownload.class);
+	private static final long DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+	private static final int DEFAULT_PARALLELISM = 4;
+	private static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+	private static final long PROGRESS_INTERVAL_MILLIS = 200;
+	private static final int DEFAULT_MAX_STREAMS = 16;
+	private static final long IDLE_WORKER_MILLIS = 60 * 1000;
+
+	private static final ExecutorService workers = createWorkers();
+
+	private static ExecutorService createWorkers() {
+		int maxStreams = Math.max(1, HadoopPreferences.getInt(HadoopPreferences.HDFS_DOWNLOAD_MAX_STREAMS, DEFAULT_MAX_STREAMS));
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxStreams, maxStreams, IDLE_WORKER_MILLIS, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "HDFS download " + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// Idle threads end, so the pool only stays full while downloading
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private final HDFSFileStore store;
+	private final File localFile;
+	private final long length;
+	private final long lastModified;
+	private final long chunkSize;
+	private final int parallelism;
+	private final int rangeCount;
+	private final AtomicInteger nextRange = new AtomicInteger();
+	private final AtomicLong transferred = new AtomicLong();
+	private volatile boolean cancelled = false;
+	private final TransferThrottle throttle;
+	private TransferJournal journal;
+	private Set<Long> writtenSegments;
+
+	/**
+	 * @param store
+	 * @param localFile
+	 * @param length
+	 *            length of the server file
+	 * @param lastModified
+	 *            modification time of the server file, which identifies it
+	 *            when resuming
+	 */
+	RangedDownload(HDFSFileStore store, File localFile, long length, long lastModified) {
+		this(store, localFile, length, lastModified, HadoopPreferences.getLong(HadoopPreferences.HDFS_DOWNLOAD_CHUNK_SIZE, DEFAULT_CHUNK_SIZE),
+				HadoopPreferences.getInt(HadoopPreferences.HDFS_DOWNLOAD_PARALLELISM, DEFAULT_PARALLELISM));
+	}
+
+	RangedDownload(HDFSFileStore store, File localFile, long length, long lastModified, long chunkSize, int parallelism) {
+		this.store = store;
+		this.localFile = localFile;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.throttle = new TransferThrottle(store.toURI());
+		// Ranges are made of whole segments
+		this.chunkSize = Math.max(1, (chunkSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE) * SEGMENT_SIZE;
+		this.rangeCount = (int) ((length + this.chunkSize - 1) / this.chunkSize);
+		this.parallelism = Math.max(1, Math.min(parallelism, rangeCount));
+	}
+
+	/**
+	 * Downloads the file, returning once all ranges are written.
+	 *
+	 * @param monitor
+	 *            receives the progress. Cancelling it stops all streams.
+	 * @throws IOException
+	 * @throws CoreException
+	 * @throws InterruptedException
+	 *             when cancelled
+	 */
+	void run(IProgressMonitor monitor) throws IOException, CoreException, InterruptedException {
+		int totalWork = (int) Math.min(Integer.MAX_VALUE, (length + 1023) / 1024);
+		monitor.beginTask("Downloading " + store.toURI(), totalWork);
+		File partFile = TransferJournal.getPartFile(localFile);
+		File journalFile = TransferJournal.getDownloadJournalFile(localFile);
+		if (!partFile.exists() || partFile.length() != length)
+			journalFile.delete();
+		journal = new TransferJournal(journalFile, "download " + length + " " + lastModified + " " + SEGMENT_SIZE);
+		writtenSegments = Collections.synchronizedSet(new HashSet<Long>(journal.getEntries()));
+		for (Long segment : writtenSegments)
+			transferred.addAndGet(Math.min(SEGMENT_SIZE, length - segment * SEGMENT_SIZE));
+		if (logger.isDebugEnabled() && !writtenSegments.isEmpty())
+			logger.debug("[" + store.toURI() + "]: Resuming download with " + transferred + " of " + length + " bytes written");
+		boolean complete = false;
+		RandomAccessFile file = new RandomAccessFile(partFile, "rw");
+		try {
+			file.setLength(length);
+			final FileChannel channel = file.getChannel();
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(parallelism);
+			for (int i = 0; i < parallelism; i++) {
+				futures.add(workers.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						int range = nextRange.getAndIncrement();
+						while (range < rangeCount && !cancelled) {
+							fetchRange(range, channel);
+							range = nextRange.getAndIncrement();
+						}
+						return null;
+					}
+				}));
+			}
+			try {
+				int reported = 0;
+				for (Future<Void> future : futures) {
+					while (true) {
+						if (monitor.isCanceled())
+							throw new InterruptedException();
+						try {
+							future.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+							break;
+						} catch (TimeoutException e) {
+						} finally {
+							int done = (int) Math.min(totalWork, transferred.get() / 1024);
+							monitor.worked(done - reported);
+							reported = done;
+							monitor.subTask(TransferThrottle.formatRate(throttle.getRate()));
+						}
+					}
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof CoreException)
+					throw (CoreException) cause;
+				if (cause instanceof InterruptedException)
+					throw (InterruptedException) cause;
+				throw new IOException(cause);
+			} finally {
+				cancelled = true;
+				for (Future<Void> future : futures)
+					future.cancel(true);
+			}
+			complete = true;
+		} finally {
+			file.close();
+			monitor.done();
+		}
+		if (complete) {
+			if (localFile.exists() && !localFile.delete())
+				throw new IOException("Unable to replace " + localFile);
+			if (!partFile.renameTo(localFile))
+				throw new IOException("Unable to rename " + partFile + " to " + localFile);
+			journal.delete();
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[" + store.toURI() + "]: Downloaded " + length + " bytes in " + rangeCount + " ranges with " + parallelism + " streams");
+	}
+
+	private void fetchRange(int range, FileChannel channel) throws IOException, CoreException, InterruptedException {
+		long start = range * chunkSize;
+		long end = Math.min(length, start + chunkSize);
+		ReadableByteChannel in = null;
+		long streamPosition = -1;
+		try {
+			for (long position = start; position < end; position += SEGMENT_SIZE) {
+				long segment = position / SEGMENT_SIZE;
+				if (writtenSegments.contains(segment))
+					continue;
+				if (streamPosition != position) {
+					if (in != null)
+						in.close();
+					InputStream stream = store.openRemoteInputStream(position, null);
+					if (stream == null)
+						throw new IOException("Unable to open " + store.toURI());
+					in = Channels.newChannel(stream);
+				}
+				streamPosition = copy(in, channel, position, Math.min(end, position + SEGMENT_SIZE));
+				journal.append(segment);
+				writtenSegments.add(segment);
+			}
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+	/**
+	 * Copies the stream into the file, from the start position to the end,
+	 * through a pooled direct buffer.
+	 *
+	 * @return the end position
+	 */
+	private long copy(ReadableByteChannel in, FileChannel channel, long position, long end) throws IOException, InterruptedException {
+		ByteBuffer buffer = BufferPool.INSTANCE.acquire();
+		try {
+			while (position < end) {
+				if (cancelled)
+					throw new InterruptedException();
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+				int read = BufferPool.readFully(in, buffer);
+				if (read < 0)
+					throw new EOFException("Unexpected end of " + store.toURI() + " at " + position);
+				buffer.flip();
+				while (buffer.hasRemaining())
+					position += channel.write(buffer, position);
+				transferred.addAndGet(read);
+				throttle.acquire(read);
+			}
+		} finally {
+			BufferPool.INSTANCE.release(buffer);
+		}
+		return position;
+	}
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+
+/**
+ * Reads a channel on a separate thread into a ring of buffers from the
+ * {@link BufferPool}, running ahead of the consumer by up to the number of
+ * buffers. Lets an upload read the local disk while it writes to the
+ * network, instead of alternating between them.
+ * <p>
+ * Readers run on a shared pool of threads, which are kept for a while between
+ * uploads. A ring is no larger than needed for the bytes to read, and what
+ * fits into a single buffer is read by the consumer itself, without a reader.
+ * <p>
+ * The consumer takes filled buffers with {@link #take()} and returns each one
+ * with {@link #recycle(ByteBuffer)} once written. {@link #close()} must be
+ * called when done, which stops the reader and releases the buffers.
+ */
+class ReadAheadChannel {
+
+	private static final int DEFAULT_READ_AHEAD = 4;
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private static final ExecutorService readers = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "HDFS upload reader " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final ReadableByteChannel channel;
+	private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> filled;
+	private final AtomicBoolean readerClaimed = new AtomicBoolean();
+	private final CountDownLatch readerDone = new CountDownLatch(1);
+	private volatile IOException error;
+	private boolean ended = false;
+	private Future<?> reader;
+
+	/**
+	 * @param channel
+	 *            positioned where reading starts. It is not closed.
+	 * @param remaining
+	 *            number of bytes expected to be read
+	 */
+	ReadAheadChannel(ReadableByteChannel channel, long remaining) {
+		this(channel, remaining, HadoopPreferences.getInt(HadoopPreferences.UPLOAD_READ_AHEAD, DEFAULT_READ_AHEAD));
+	}
+
+	ReadAheadChannel(ReadableByteChannel channel, long remaining, int readAhead) {
+		this.channel = channel;
+		int bufferSize = BufferPool.INSTANCE.getBufferSize();
+		long needed = Math.max(1, (remaining + bufferSize - 1) / bufferSize);
+		int count = (int) Math.min(Math.max(2, readAhead), needed);
+		this.free = new ArrayBlockingQueue<ByteBuffer>(count);
+		// One more for the end marker
+		this.filled = new ArrayBlockingQueue<ByteBuffer>(count + 1);
+		for (int i = 0; i < count; i++) {
+			ByteBuffer buffer = BufferPool.INSTANCE.acquire();
+			buffers.add(buffer);
+			free.add(buffer);
+		}
+		// A single buffer is read when taken
+		if (count > 1) {
+			reader = readers.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (!readerClaimed.compareAndSet(false, true))
+						return;
+					try {
+						read();
+					} finally {
+						readerDone.countDown();
+					}
+				}
+			});
+		}
+	}
+
+	private void read() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				ByteBuffer buffer = free.take();
+				buffer.clear();
+				if (BufferPool.readFully(channel, buffer) < 0)
+					break;
+				buffer.flip();
+				filled.put(buffer);
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (IOException e) {
+			error = e;
+		}
+		filled.offer(END);
+	}
+
+	/**
+	 * Waits for the next filled buffer.
+	 *
+	 * @return the buffer, flipped for reading, or <code>null</code> at the end
+	 *         of the channel
+	 * @throws IOException
+	 *             when reading failed
+	 * @throws InterruptedException
+	 */
+	ByteBuffer take() throws IOException, InterruptedException {
+		if (ended)
+			return null;
+		if (reader == null) {
+			ByteBuffer buffer = buffers.get(0);
+			buffer.clear();
+			if (BufferPool.readFully(channel, buffer) < 0) {
+				ended = true;
+				return null;
+			}
+			buffer.flip();
+			return buffer;
+		}
+		ByteBuffer buffer = filled.take();
+		if (buffer == END) {
+			ended = true;
+			if (error != null)
+				throw error;
+			return null;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer from {@link #take()} to be filled again.
+	 *
+	 * @param buffer
+	 */
+	void recycle(ByteBuffer buffer) {
+		if (reader != null)
+			free.offer(buffer);
+	}
+
+	/**
+	 * Stops reading and releases the buffers to the {@link BufferPool}.
+	 * Interrupting a read closes the channel.
+	 */
+	void close() {
+		if (reader != null) {
+			reader.cancel(true);
+			// Not waited for when it never started
+			if (!readerClaimed.compareAndSet(false, true)) {
+				try {
+					readerDone.await();
+				} catch (InterruptedException e) {
+					// The reader may still use the buffers, so they are not
+					// pooled
+					Thread.currentThread().interrupt();
+					buffers.clear();
+					return;
+				}
+			}
+		}
+		for (ByteBuffer buffer : buffers)
+			BufferPool.INSTANCE.release(buffer);
+		buffers.clear();
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.eclipse.Activator;
+import org.apache.log4j.Logger;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.framework.Bundle;
+
+/**
+ * Raises the replication of files uploaded with fewer replicas, as soon as
+ * their upload completes. Files then stay in the queue until every block has
+ * the target number of replicas, which is then logged, or until the server
+ * stops responding for them. When raising the replication fails, it is
+ * retried from the queue.
+ * <p>
+ * The queue is saved in the data area of the plugin whenever it changes, and
+ * loaded again on start, so that files whose replication could not be raised
+ * yet are not left with fewer replicas when Eclipse exits.
+ */
+public class ReplicationQueue {
+
+	public static ReplicationQueue INSTANCE = new ReplicationQueue();
+	private static final Logger logger = Logger.getLogger(ReplicationQueue.class);
+	private static final long POLL_INTERVAL_MILLIS = 5000;
+	private static final long MAX_WAIT_MILLIS = 30 * 60 * 1000;
+	private static final int MAX_FAILURES = 5;
+	private static final String QUEUE_FILE_NAME = "replication.queue";
+	private static final String ENCODING = "UTF-8";
+
+	private final Map<URI, Entry> pending = new LinkedHashMap<URI, Entry>();
+
+	private final Job job = new Job("Replicating uploaded files") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			List<Entry> entries;
+			synchronized (pending) {
+				entries = new ArrayList<Entry>(pending.values());
+			}
+			monitor.beginTask(getName(), entries.size());
+			try {
+				for (Entry entry : entries) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					monitor.subTask(entry.uri.getPath());
+					if (process(entry))
+						remove(entry);
+					monitor.worked(1);
+				}
+			} finally {
+				monitor.done();
+			}
+			synchronized (pending) {
+				if (!pending.isEmpty())
+					schedule(POLL_INTERVAL_MILLIS);
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	private ReplicationQueue() {
+		job.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Raises the replication of the server file, and queues it until the
+	 * replicas are there. When raising fails, it is retried from the queue.
+	 * 
+	 * @param uri
+	 * @param target
+	 *            replication to reach. 0 for the default of the server
+	 */
+	public void add(URI uri, short target) {
+		Entry entry = new Entry(uri, target);
+		try {
+			setReplication((HDFSFileStore) EFS.getStore(uri), entry);
+		} catch (CoreException e) {
+			logger.debug("[" + uri + "]: Unable to raise replication. Retrying from the queue.", e);
+		}
+		synchronized (pending) {
+			pending.put(uri, entry);
+			save();
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[" + uri + "]: Queued for replication " + entry.target);
+		job.schedule(POLL_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Queues the files saved when Eclipse last exited. Their replication is
+	 * raised again, as it may not have been raised yet.
+	 */
+	public void load() {
+		File file = getQueueFile();
+		if (file == null || !file.exists())
+			return;
+		int loaded = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+			try {
+				synchronized (pending) {
+					String line = reader.readLine();
+					while (line != null) {
+						int index = line.indexOf(' ');
+						try {
+							URI uri = new URI(line.substring(index + 1));
+							if (!pending.containsKey(uri)) {
+								pending.put(uri, new Entry(uri, Short.parseShort(line.substring(0, index))));
+								loaded++;
+							}
+						} catch (NumberFormatException e) {
+							logger.debug("Skipping invalid replication queue entry: " + line);
+						} catch (URISyntaxException e) {
+							logger.debug("Skipping invalid replication queue entry: " + line);
+						} catch (IndexOutOfBoundsException e) {
+							logger.debug("Skipping invalid replication queue entry: " + line);
+						}
+						line = reader.readLine();
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to load replication queue " + file, e);
+		}
+		if (loaded > 0) {
+			logger.info("Raising replication of " + loaded + " files uploaded earlier");
+			job.schedule(POLL_INTERVAL_MILLIS);
+		}
+	}
+
+	/**
+	 * Writes out the queue. Called with the lock on the queue held.
+	 */
+	private void save() {
+		File file = getQueueFile();
+		if (file == null)
+			return;
+		if (pending.isEmpty()) {
+			if (file.exists() && !file.delete())
+				logger.debug("Unable to delete replication queue " + file);
+			return;
+		}
+		StringBuilder text = new StringBuilder();
+		for (Entry entry : pending.values())
+			text.append(entry.target).append(' ').append(entry.uri).append('\n');
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(text.toString().getBytes(ENCODING));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to save replication queue " + file, e);
+		}
+	}
+
+	/**
+	 * @return <code>null</code> when the platform is not running
+	 */
+	private static File getQueueFile() {
+		Bundle bundle = Platform.getBundle(Activator.BUNDLE_ID);
+		if (bundle == null || bundle.getBundleContext() == null)
+			return null;
+		return bundle.getBundleContext().getDataFile(QUEUE_FILE_NAME);
+	}
+
+	/**
+	 * @return the server files not yet at their target replication
+	 */
+	public List<URI> getPending() {
+		synchronized (pending) {
+			return new ArrayList<URI>(pending.keySet());
+		}
+	}
+
+	private void remove(Entry entry) {
+		synchronized (pending) {
+			// Queued again when uploaded again
+			if (pending.get(entry.uri) == entry) {
+				pending.remove(entry.uri);
+				save();
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when done with the file
+	 */
+	private boolean process(Entry entry) {
+		try {
+			HDFSFileStore store = (HDFSFileStore) EFS.getStore(entry.uri);
+			if (!entry.replicationSet)
+				setReplication(store, entry);
+			int replicas = store.getServerMinReplicas();
+			if (replicas < 0 || entry.target <= 0) {
+				if (logger.isDebugEnabled())
+					logger.debug("[" + entry.uri + "]: Replication raised, replicas not known");
+				return true;
+			}
+			if (replicas >= entry.target) {
+				logger.info("[" + entry.uri + "]: Reached replication " + entry.target + " after "
+						+ (System.currentTimeMillis() - entry.queued) / 1000 + "s");
+				return true;
+			}
+			if (System.currentTimeMillis() - entry.queued > MAX_WAIT_MILLIS) {
+				logger.warn("[" + entry.uri + "]: Still at " + replicas + " of " + entry.target + " replicas. No longer waiting.");
+				return true;
+			}
+			entry.failures = 0;
+		} catch (CoreException e) {
+			if (++entry.failures >= MAX_FAILURES) {
+				logger.warn("[" + entry.uri + "]: Unable to raise replication to " + entry.target, e);
+				return true;
+			}
+			logger.debug(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	private static void setReplication(HDFSFileStore store, Entry entry) throws CoreException {
+		if (entry.target <= 0)
+			entry.target = store.getServerDefaultReplication();
+		store.setServerReplication(entry.target);
+		entry.replicationSet = true;
+	}
+
+	/**
+	 * Cancels tracking of the server files under the URI, such as when they
+	 * are deleted.
+	 * 
+	 * @param uri
+	 */
+	public void cancel(URI uri) {
+		String path = uri.toString();
+		String prefix = path.endsWith("/") ? path : path + "/";
+		synchronized (pending) {
+			boolean removed = false;
+			Iterator<URI> it = pending.keySet().iterator();
+			while (it.hasNext()) {
+				String pendingPath = it.next().toString();
+				if (pendingPath.equals(path) || pendingPath.startsWith(prefix)) {
+					it.remove();
+					removed = true;
+				}
+			}
+			if (removed)
+				save();
+		}
+	}
+
+	/**
+	 * Follows the server files under a renamed URI to their new location.
+	 * 
+	 * @param uri
+	 * @param destination
+	 */
+	public void moved(URI uri, URI destination) {
+		String path = uri.toString();
+		String prefix = path.endsWith("/") ? path : path + "/";
+		String destinationPath = destination.toString();
+		synchronized (pending) {
+			List<Entry> moved = new ArrayList<Entry>();
+			Iterator<Entry> it = pending.values().iterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				String pendingPath = entry.uri.toString();
+				if (pendingPath.equals(path) || pendingPath.startsWith(prefix)) {
+					it.remove();
+					moved.add(entry.moveTo(URI.create(destinationPath + pendingPath.substring(path.length()))));
+				}
+			}
+			for (Entry entry : moved)
+				pending.put(entry.uri, entry);
+			if (!moved.isEmpty())
+				save();
+		}
+	}
+
+	private static class Entry {
+		private final URI uri;
+		private final long queued = System.currentTimeMillis();
+		private short target;
+		private boolean replicationSet = false;
+		private int failures = 0;
+
+		Entry(URI uri, short target) {
+			this.uri = uri;
+			this.target = target;
+		}
+
+		Entry moveTo(URI destination) {
+			Entry entry = new Entry(destination, target);
+			entry.replicationSet = replicationSet;
+			entry.failures = failures;
+			return entry;
+		}
+	}
+}
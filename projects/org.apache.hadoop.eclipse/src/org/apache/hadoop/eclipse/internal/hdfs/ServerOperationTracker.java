@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Tracks the URIs of resources with a transfer or other server operation in
+ * progress. Starting and stopping operations only update concurrent sets.
+ * Listeners are told about the changes at most every
+ * {@link #NOTIFY_DELAY_MILLIS}, with all URIs started and stopped since, so
+ * that many short operations cause a single event.
+ */
+public class ServerOperationTracker {
+
+	public static ServerOperationTracker INSTANCE = new ServerOperationTracker();
+	private static final long NOTIFY_DELAY_MILLIS = 100;
+
+	/**
+	 * Told about operations started and stopped, on a background thread.
+	 */
+	public interface Listener {
+		/**
+		 * A URI may be in both sets when its operation was short. Use
+		 * {@link ServerOperationTracker#isRunning(String)} for the current
+		 * state.
+		 * 
+		 * @param started
+		 * @param stopped
+		 */
+		void operationsChanged(Set<String> started, Set<String> stopped);
+	}
+
+	private final Set<String> running = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Set<String> started = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Set<String> stopped = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ListenerList listeners = new ListenerList();
+	private final AtomicBoolean notifyScheduled = new AtomicBoolean();
+
+	private final Job notifyJob = new Job("Notifying HDFS operation changes") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			notifyScheduled.set(false);
+			Set<String> startedURIs = drain(started);
+			Set<String> stoppedURIs = drain(stopped);
+			if (startedURIs.isEmpty() && stoppedURIs.isEmpty())
+				return Status.OK_STATUS;
+			startedURIs = Collections.unmodifiableSet(startedURIs);
+			stoppedURIs = Collections.unmodifiableSet(stoppedURIs);
+			for (Object listener : listeners.getListeners())
+				((Listener) listener).operationsChanged(startedURIs, stoppedURIs);
+			return Status.OK_STATUS;
+		}
+	};
+
+	private ServerOperationTracker() {
+		notifyJob.setSystem(true);
+		notifyJob.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * @param uri
+	 * @return <code>false</code> when an operation on the URI was already
+	 *         running
+	 */
+	public boolean start(String uri) {
+		if (!running.add(uri))
+			return false;
+		changed(started, uri);
+		return true;
+	}
+
+	/**
+	 * @param uri
+	 */
+	public void stop(String uri) {
+		if (running.remove(uri))
+			changed(stopped, uri);
+	}
+
+	public boolean isRunning(String uri) {
+		return running.contains(uri);
+	}
+
+	/**
+	 * @return number of operations running
+	 */
+	public int getRunningCount() {
+		return running.size();
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Records the change for the next event. Nothing is recorded without
+	 * listeners.
+	 */
+	private void changed(Set<String> changes, String uri) {
+		if (listeners.isEmpty())
+			return;
+		changes.add(uri);
+		if (notifyScheduled.compareAndSet(false, true))
+			notifyJob.schedule(NOTIFY_DELAY_MILLIS);
+	}
+
+	private static Set<String> drain(Set<String> uris) {
+		Set<String> drained = new HashSet<String>();
+		Iterator<String> it = uris.iterator();
+		while (it.hasNext()) {
+			drained.add(it.next());
+			it.remove();
+		}
+		return drained;
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the server owning a URI, as the server whose URI is the longest
+ * prefix of it. A server URI ending with '/' owns every URI below it; other
+ * server URIs only own themselves.
+ * <p>
+ * The server URIs are kept in a character trie, which is rebuilt on every
+ * change and replaced as a whole, so that lookups need no locking and
+ * allocate nothing. Servers change rarely, lookups happen for every resource.
+ */
+public class ServerURIIndex<T> {
+
+	private final Map<String, T> servers = new HashMap<String, T>();
+	private volatile Node root = new Node();
+
+	/**
+	 * @param uri
+	 * @return the value of the server owning the URI, or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(String uri) {
+		if (uri == null)
+			return null;
+		Node node = root;
+		Object match = null;
+		int length = uri.length();
+		for (int i = 0; i < length; i++) {
+			char c = uri.charAt(i);
+			node = node.getChild(c);
+			if (node == null)
+				break;
+			if (node.value != null && (c == '/' || i == length - 1))
+				match = node.value;
+		}
+		return (T) match;
+	}
+
+	public synchronized void put(String uri, T value) {
+		servers.put(uri, value);
+		rebuild();
+	}
+
+	public synchronized void remove(String uri) {
+		if (servers.remove(uri) != null)
+			rebuild();
+	}
+
+	public synchronized void clear() {
+		servers.clear();
+		rebuild();
+	}
+
+	public synchronized int size() {
+		return servers.size();
+	}
+
+	private void rebuild() {
+		Builder builder = new Builder();
+		for (Map.Entry<String, T> e : servers.entrySet()) {
+			Builder node = builder;
+			String uri = e.getKey();
+			for (int i = 0; i < uri.length(); i++) {
+				Builder child = node.children.get(uri.charAt(i));
+				if (child == null) {
+					child = new Builder();
+					node.children.put(uri.charAt(i), child);
+				}
+				node = child;
+			}
+			node.value = e.getValue();
+		}
+		root = builder.build();
+	}
+
+	/**
+	 * Immutable trie node. Children are sorted by their character.
+	 */
+	private static class Node {
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private final char[] keys;
+		private final Node[] children;
+		private final Object value;
+
+		Node() {
+			this(NO_KEYS, NO_CHILDREN, null);
+		}
+
+		Node(char[] keys, Node[] children, Object value) {
+			this.keys = keys;
+			this.children = children;
+			this.value = value;
+		}
+
+		Node getChild(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index < 0 ? null : children[index];
+		}
+	}
+
+	private static class Builder {
+		private final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+		private Object value;
+
+		Node build() {
+			if (children.isEmpty())
+				return new Node(Node.NO_KEYS, Node.NO_CHILDREN, value);
+			char[] keys = new char[children.size()];
+			Node[] nodes = new Node[children.size()];
+			int i = 0;
+			for (Map.Entry<Character, Builder> e : children.entrySet()) {
+				keys[i] = e.getKey();
+				nodes[i++] = e.getValue().build();
+			}
+			return new Node(keys, nodes, value);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records the progress of a transfer next to its local file, so that an
+ * interrupted transfer can be resumed. The journal starts with a header
+ * describing the transfer, such as the length and modification time of the
+ * source. A journal whose header does not match the current transfer is
+ * discarded. Every completed step is appended as a line, and written out
+ * immediately.
+ * <p>
+ * Downloads are written into a part file next to the local file, which
+ * replaces the local file once complete. Uploads are written into a part file
+ * next to the server file in the same way. Part and journal files are hidden
+ * from the HDFS project.
+ */
+class TransferJournal {
+
+	private static final Logger logger = Logger.getLogger(TransferJournal.class);
+	private static final String PART_SUFFIX = ".part";
+	private static final String DOWNLOAD_SUFFIX = ".part.journal";
+	private static final String UPLOAD_SUFFIX = ".upload.journal";
+	private static final String ENCODING = "UTF-8";
+
+	private final File file;
+	private final String header;
+	private final List<Long> entries = new ArrayList<Long>();
+
+	/**
+	 * Opens the journal, keeping its entries when it was written for the same
+	 * transfer, and starting it over otherwise.
+	 *
+	 * @param file
+	 * @param header
+	 *            single line identifying the transfer
+	 * @throws IOException
+	 */
+	TransferJournal(File file, String header) throws IOException {
+		this.file = file;
+		this.header = header;
+		if (file.exists() && !load()) {
+			if (logger.isDebugEnabled())
+				logger.debug("Discarding journal of a different transfer: " + file);
+			entries.clear();
+		}
+		if (entries.isEmpty())
+			write(header + "\n", false);
+	}
+
+	private boolean load() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+		try {
+			if (!header.equals(reader.readLine()))
+				return false;
+			String line = reader.readLine();
+			while (line != null) {
+				try {
+					entries.add(Long.valueOf(line.trim()));
+				} catch (NumberFormatException e) {
+					// Incomplete last line, written while failing
+					break;
+				}
+				line = reader.readLine();
+			}
+			return true;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return the recorded steps, oldest first
+	 */
+	synchronized List<Long> getEntries() {
+		return new ArrayList<Long>(entries);
+	}
+
+	/**
+	 * Records a completed step.
+	 *
+	 * @param entry
+	 * @throws IOException
+	 */
+	synchronized void append(long entry) throws IOException {
+		write(entry + "\n", true);
+		entries.add(entry);
+	}
+
+	private void write(String text, boolean append) throws IOException {
+		OutputStream out = new FileOutputStream(file, append);
+		try {
+			out.write(text.getBytes(ENCODING));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Discards all recorded steps.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void reset() throws IOException {
+		entries.clear();
+		write(header + "\n", false);
+	}
+
+	synchronized void delete() {
+		entries.clear();
+		if (file.exists() && !file.delete())
+			logger.debug("Unable to delete journal " + file);
+	}
+
+	/**
+	 * @param localFile
+	 * @return the file into which the local file is downloaded
+	 */
+	static File getPartFile(File localFile) {
+		return new File(localFile.getParentFile(), "." + localFile.getName() + PART_SUFFIX);
+	}
+
+	/**
+	 * @param name
+	 *            name of the server file
+	 * @return name of the server file into which it is uploaded
+	 */
+	static String getPartName(String name) {
+		return "." + name + PART_SUFFIX;
+	}
+
+	/**
+	 * @param localFile
+	 * @return the journal of the download of the local file
+	 */
+	static File getDownloadJournalFile(File localFile) {
+		return new File(localFile.getParentFile(), "." + localFile.getName() + DOWNLOAD_SUFFIX);
+	}
+
+	/**
+	 * @param localFile
+	 * @return the journal of the upload of the local file
+	 */
+	static File getUploadJournalFile(File localFile) {
+		return new File(localFile.getParentFile(), "." + localFile.getName() + UPLOAD_SUFFIX);
+	}
+
+	/**
+	 * @param name
+	 * @return <code>true</code> for part and journal files, which are not
+	 *         resources of the project
+	 */
+	static boolean isTransferFile(String name) {
+		return name.startsWith(".") && (name.endsWith(PART_SUFFIX) || name.endsWith(DOWNLOAD_SUFFIX) || name.endsWith(UPLOAD_SUFFIX));
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.eclipse.Activator;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.hadoop.eclipse.internal.model.HDFSServer;
+import org.apache.log4j.Logger;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Runs file downloads and uploads with a bounded number of transfers, overall
+ * and per server, instead of one job per file. Transfers wait in a queue per
+ * server. Interactive transfers start before bulk transfers, and transfers of
+ * the same priority start in the order they were scheduled.
+ * <p>
+ * Every call to {@link #schedule(String, List, Kind, Priority)} is shown as a
+ * single job, which reports the progress of all of its transfers and cancels
+ * them when cancelled. Its subtask shows the rate of each running transfer.
+ */
+public class TransferScheduler {
+
+	public static TransferScheduler INSTANCE = new TransferScheduler();
+	private static final Logger logger = Logger.getLogger(TransferScheduler.class);
+	private static final int DEFAULT_TRANSFER_LIMIT = 4;
+	private static final int DEFAULT_SERVER_TRANSFER_LIMIT = 2;
+	private static final long PROGRESS_INTERVAL_MILLIS = 200;
+
+	public enum Kind {
+		DOWNLOAD, UPLOAD
+	}
+
+	public enum Priority {
+		/**
+		 * Transfers the user waits for, such as a single file.
+		 */
+		INTERACTIVE,
+		/**
+		 * Transfers of whole folders.
+		 */
+		BULK
+	}
+
+	private final int transferLimit;
+	private final int serverTransferLimit;
+	private final Map<String, PriorityQueue<Transfer>> queues = new HashMap<String, PriorityQueue<Transfer>>();
+	private final Map<String, Integer> runningPerServer = new HashMap<String, Integer>();
+	private int running = 0;
+	private long sequence = 0;
+
+	private TransferScheduler() {
+		this(HadoopPreferences.getInt(HadoopPreferences.TRANSFER_LIMIT, DEFAULT_TRANSFER_LIMIT), HadoopPreferences.getInt(
+				HadoopPreferences.TRANSFER_SERVER_LIMIT, DEFAULT_SERVER_TRANSFER_LIMIT));
+	}
+
+	TransferScheduler(int transferLimit, int serverTransferLimit) {
+		this.transferLimit = Math.max(1, transferLimit);
+		this.serverTransferLimit = Math.max(1, serverTransferLimit);
+	}
+
+	/**
+	 * Queues the transfer of the files.
+	 *
+	 * @param name
+	 *            name of the job showing the progress
+	 * @param files
+	 * @param kind
+	 * @param priority
+	 * @return the job showing the progress, which is already scheduled
+	 */
+	public Job schedule(String name, List<IResource> files, Kind kind, Priority priority) {
+		Batch batch = new Batch(name, files.size());
+		batch.setPriority(priority == Priority.INTERACTIVE ? Job.SHORT : Job.LONG);
+		synchronized (this) {
+			for (IResource file : files) {
+				Transfer transfer = new Transfer(batch, file, kind, priority, sequence++);
+				PriorityQueue<Transfer> queue = queues.get(transfer.server);
+				if (queue == null) {
+					queue = new PriorityQueue<Transfer>();
+					queues.put(transfer.server, queue);
+				}
+				queue.add(transfer);
+			}
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("schedule(): " + files.size() + " " + kind + " transfers, " + priority);
+		batch.schedule();
+		dispatch();
+		return batch;
+	}
+
+	/**
+	 * Starts queued transfers while below the limits.
+	 */
+	private void dispatch() {
+		List<Transfer> started = new ArrayList<Transfer>();
+		synchronized (this) {
+			while (running < transferLimit) {
+				Transfer next = null;
+				for (Map.Entry<String, PriorityQueue<Transfer>> e : queues.entrySet()) {
+					if (getRunning(e.getKey()) >= serverTransferLimit)
+						continue;
+					Transfer head = e.getValue().peek();
+					if (head != null && (next == null || head.compareTo(next) < 0))
+						next = head;
+				}
+				if (next == null)
+					break;
+				PriorityQueue<Transfer> queue = queues.get(next.server);
+				queue.poll();
+				if (queue.isEmpty())
+					queues.remove(next.server);
+				runningPerServer.put(next.server, getRunning(next.server) + 1);
+				running++;
+				started.add(next);
+			}
+		}
+		for (Transfer transfer : started)
+			new Worker(transfer).schedule();
+	}
+
+	private int getRunning(String server) {
+		Integer count = runningPerServer.get(server);
+		return count == null ? 0 : count;
+	}
+
+	private void finished(Transfer transfer, IStatus status) {
+		releaseSlot(transfer.server);
+		transfer.batch.finished(transfer, status);
+		dispatch();
+	}
+
+	private synchronized void releaseSlot(String server) {
+		running--;
+		int count = getRunning(server) - 1;
+		if (count > 0)
+			runningPerServer.put(server, count);
+		else
+			runningPerServer.remove(server);
+	}
+
+	/**
+	 * Counts a transfer run outside of the scheduler, such as by a
+	 * {@link BulkImport}, against the limits. Queued transfers are started
+	 * first.
+	 *
+	 * @param file
+	 * @return <code>false</code> when the limits are reached
+	 */
+	boolean tryStart(IResource file) {
+		String server = getServerKey(file);
+		synchronized (this) {
+			if (running >= transferLimit || getRunning(server) >= serverTransferLimit || queues.containsKey(server))
+				return false;
+			runningPerServer.put(server, getRunning(server) + 1);
+			running++;
+		}
+		return true;
+	}
+
+	/**
+	 * Ends a transfer started with {@link #tryStart(IResource)}.
+	 *
+	 * @param file
+	 */
+	void finished(IResource file) {
+		releaseSlot(getServerKey(file));
+		dispatch();
+	}
+
+	/**
+	 * Removes the queued transfers of the batch.
+	 *
+	 * @return number of transfers removed
+	 */
+	private synchronized int removeQueued(Batch batch) {
+		int removed = 0;
+		Iterator<PriorityQueue<Transfer>> queueIt = queues.values().iterator();
+		while (queueIt.hasNext()) {
+			PriorityQueue<Transfer> queue = queueIt.next();
+			Iterator<Transfer> it = queue.iterator();
+			while (it.hasNext()) {
+				if (it.next().batch == batch) {
+					it.remove();
+					removed++;
+				}
+			}
+			if (queue.isEmpty())
+				queueIt.remove();
+		}
+		return removed;
+	}
+
+	/**
+	 * @return number of transfers waiting to start
+	 */
+	public synchronized int getQueued() {
+		int queued = 0;
+		for (PriorityQueue<Transfer> queue : queues.values())
+			queued += queue.size();
+		return queued;
+	}
+
+	/**
+	 * @return number of transfers running
+	 */
+	public synchronized int getRunning() {
+		return running;
+	}
+
+	private static String getServerKey(IResource file) {
+		URI uri = file.getLocationURI();
+		if (uri == null)
+			return "";
+		HDFSServer server = HDFSManager.INSTANCE.getServer(uri.toString());
+		if (server != null)
+			return server.getUri();
+		return uri.getScheme() + "://" + uri.getAuthority();
+	}
+
+	private static class Transfer implements Comparable<Transfer> {
+		private final Batch batch;
+		private final IResource file;
+		private final Kind kind;
+		private final Priority priority;
+		private final long sequence;
+		private final String server;
+
+		Transfer(Batch batch, IResource file, Kind kind, Priority priority, long sequence) {
+			this.batch = batch;
+			this.file = file;
+			this.kind = kind;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.server = getServerKey(file);
+		}
+
+		@Override
+		public int compareTo(Transfer other) {
+			if (priority != other.priority)
+				return priority.ordinal() - other.priority.ordinal();
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Runs a single transfer.
+	 */
+	private class Worker extends Job {
+		private final Transfer transfer;
+
+		Worker(Transfer transfer) {
+			super((transfer.kind == Kind.DOWNLOAD ? "Downloading " : "Uploading ") + transfer.file.getLocationURI());
+			this.transfer = transfer;
+			setSystem(true);
+			setPriority(transfer.priority == Priority.INTERACTIVE ? Job.SHORT : Job.LONG);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			IStatus status = Status.CANCEL_STATUS;
+			try {
+				if (!transfer.batch.isCancelled()) {
+					transfer.batch.started(transfer);
+					IProgressMonitor transferMonitor = new TransferMonitor(transfer, monitor);
+					if (transfer.kind == Kind.DOWNLOAD)
+						status = new DownloadFileJob(transfer.file).run(transferMonitor);
+					else
+						status = new UploadFileJob(transfer.file).run(transferMonitor);
+					if (transferMonitor.isCanceled())
+						status = Status.CANCEL_STATUS;
+				}
+			} catch (CoreException e) {
+				status = e.getStatus();
+			} catch (RuntimeException e) {
+				status = new Status(IStatus.ERROR, Activator.BUNDLE_ID, e.getMessage(), e);
+			} finally {
+				finished(transfer, status);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Cancelled when either the transfer or its batch is cancelled. Passes the
+	 * rate the transfer reports as its subtask on to the batch.
+	 */
+	private static class TransferMonitor extends NullProgressMonitor {
+		private final Transfer transfer;
+		private final IProgressMonitor monitor;
+
+		TransferMonitor(Transfer transfer, IProgressMonitor monitor) {
+			this.transfer = transfer;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return transfer.batch.isCancelled() || monitor.isCanceled() || super.isCanceled();
+		}
+
+		@Override
+		public void subTask(String name) {
+			transfer.batch.progressed(transfer, name);
+		}
+	}
+
+	/**
+	 * Shows the progress of the transfers scheduled together.
+	 */
+	private class Batch extends Job {
+		private final int total;
+		private final MultiStatus status;
+		/**
+		 * Running transfers, and the rate each last reported
+		 */
+		private final Map<Transfer, String> active = new LinkedHashMap<Transfer, String>();
+		private int done = 0;
+		private volatile boolean cancelled = false;
+
+		Batch(String name, int total) {
+			super(name);
+			this.total = total;
+			this.status = new MultiStatus(Activator.BUNDLE_ID, IStatus.OK, "Errors transferring files", null);
+		}
+
+		boolean isCancelled() {
+			return cancelled;
+		}
+
+		synchronized void started(Transfer transfer) {
+			active.put(transfer, null);
+		}
+
+		synchronized void progressed(Transfer transfer, String rate) {
+			if (active.containsKey(transfer))
+				active.put(transfer, rate);
+		}
+
+		synchronized void finished(Transfer transfer, IStatus result) {
+			active.remove(transfer);
+			done++;
+			if (result != null && result.getSeverity() == IStatus.ERROR)
+				status.add(result);
+			notifyAll();
+		}
+
+		private synchronized void removed(int count) {
+			done += count;
+			notifyAll();
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			monitor.beginTask(getName(), total);
+			int reported = 0;
+			try {
+				while (true) {
+					if (monitor.isCanceled() && !cancelled) {
+						cancelled = true;
+						removed(removeQueued(this));
+					}
+					synchronized (this) {
+						monitor.worked(done - reported);
+						reported = done;
+						if (done >= total)
+							break;
+						if (!active.isEmpty())
+							monitor.subTask(getProgressMessage());
+						try {
+							wait(PROGRESS_INTERVAL_MILLIS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+				}
+			} finally {
+				monitor.done();
+			}
+			if (cancelled)
+				return Status.CANCEL_STATUS;
+			return status.getChildren().length == 0 ? Status.OK_STATUS : status;
+		}
+
+		/**
+		 * @return for example
+		 *         <code>3 of 10: a.txt 1.0 MB/s, b.txt 0.5 MB/s (total 1.5 MB/s)</code>
+		 */
+		private String getProgressMessage() {
+			StringBuilder message = new StringBuilder();
+			message.append(done).append(" of ").append(total).append(": ");
+			boolean first = true;
+			for (Map.Entry<Transfer, String> e : active.entrySet()) {
+				if (!first)
+					message.append(", ");
+				first = false;
+				message.append(e.getKey().file.getName());
+				if (e.getValue() != null)
+					message.append(' ').append(e.getValue());
+			}
+			message.append(" (total ").append(TransferThrottle.formatRate(TransferThrottle.getGlobalRate())).append(')');
+			return message.toString();
+		}
+	}
+}
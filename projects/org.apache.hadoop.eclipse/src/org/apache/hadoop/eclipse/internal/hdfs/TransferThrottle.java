@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.eclipse.internal.hdfs;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
+import org.apache.hadoop.eclipse.internal.model.HDFSServer;
+
+/**
+ * Limits the bandwidth of a file transfer with token buckets: one for the
+ * transfer, one shared by all transfers of its server, and one shared by all
+ * transfers. Every copy loop calls {@link #acquire(int)} for the bytes it
+ * moved, which waits until all three buckets allow them.
+ * <p>
+ * Limits are in bytes per second, where 0 means unlimited. They are read from
+ * the preferences at most once a second, so changing them affects running
+ * transfers.
+ */
+public class TransferThrottle {
+
+	private static final long REFRESH_INTERVAL_MILLIS = 1000;
+	private static final TokenBucket globalBucket = new TokenBucket();
+	private static final RateMeter globalMeter = new RateMeter();
+	private static final Map<String, TokenBucket> serverBuckets = new HashMap<String, TokenBucket>();
+	private static long globalLimit, serverLimit, transferLimit;
+	private static long refreshed = 0;
+
+	private final TokenBucket transferBucket = new TokenBucket();
+	private final TokenBucket serverBucket;
+	private final RateMeter meter = new RateMeter();
+
+	/**
+	 * @param uri
+	 *            URI of the transferred server file
+	 */
+	public TransferThrottle(URI uri) {
+		HDFSServer server = HDFSManager.INSTANCE.getServer(uri.toString());
+		String key = server != null ? server.getUri() : uri.getScheme() + "://" + uri.getAuthority();
+		synchronized (serverBuckets) {
+			TokenBucket bucket = serverBuckets.get(key);
+			if (bucket == null) {
+				bucket = new TokenBucket();
+				serverBuckets.put(key, bucket);
+			}
+			this.serverBucket = bucket;
+		}
+		refreshLimits();
+	}
+
+	/**
+	 * Forgets the bucket of a deleted server. Transfers still running keep
+	 * using it until they end.
+	 *
+	 * @param serverURI
+	 */
+	static void removeServer(String serverURI) {
+		synchronized (serverBuckets) {
+			serverBuckets.remove(serverURI);
+		}
+	}
+
+	/**
+	 * Waits until the bytes may be transferred.
+	 *
+	 * @param bytes
+	 * @throws InterruptedException
+	 */
+	public void acquire(int bytes) throws InterruptedException {
+		refreshLimits();
+		transferBucket.setRate(transferLimit);
+		serverBucket.setRate(serverLimit);
+		transferBucket.acquire(bytes);
+		serverBucket.acquire(bytes);
+		globalBucket.acquire(bytes);
+		meter.add(bytes);
+		globalMeter.add(bytes);
+	}
+
+	/**
+	 * @return bytes per second recently transferred by this transfer
+	 */
+	public double getRate() {
+		return meter.getRate();
+	}
+
+	/**
+	 * @return bytes per second recently transferred by all transfers
+	 */
+	public static double getGlobalRate() {
+		return globalMeter.getRate();
+	}
+
+	private static synchronized void refreshLimits() {
+		long now = System.currentTimeMillis();
+		if (now - refreshed < REFRESH_INTERVAL_MILLIS)
+			return;
+		refreshed = now;
+		globalLimit = HadoopPreferences.getLong(HadoopPreferences.TRANSFER_RATE_LIMIT, 0);
+		serverLimit = HadoopPreferences.getLong(HadoopPreferences.TRANSFER_SERVER_RATE_LIMIT, 0);
+		transferLimit = HadoopPreferences.getLong(HadoopPreferences.TRANSFER_FILE_RATE_LIMIT, 0);
+		globalBucket.setRate(globalLimit);
+	}
+
+	/**
+	 * @param bytesPerSecond
+	 * @return the rate for progress messages, such as <code>1.5 MB/s</code>
+	 */
+	public static String formatRate(double bytesPerSecond) {
+		if (bytesPerSecond >= 1024 * 1024)
+			return String.format("%.1f MB/s", bytesPerSecond / (1024 * 1024));
+		if (bytesPerSecond >= 1024)
+			return String.format("%.1f KB/s", bytesPerSecond / 1024);
+		return String.format("%.0f B/s", bytesPerSecond);
+	}
+
+	/**
+	 * Allows a number of bytes per second, with bursts of up to one second.
+	 */
+	static class TokenBucket {
+		private long rate = 0;
+		private double tokens = 0;
+		private long last = System.nanoTime();
+
+		synchronized void setRate(long rate) {
+			if (this.rate != rate) {
+				this.rate = rate;
+				tokens = Math.min(tokens, rate);
+			}
+		}
+
+		void acquire(int bytes) throws InterruptedException {
+			long waitNanos = reserve(bytes);
+			if (waitNanos > 0)
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+
+		/**
+		 * Takes the bytes from the bucket, which may go into debt.
+		 *
+		 * @return nanoseconds to wait until the debt is paid
+		 */
+		synchronized long reserve(int bytes) {
+			long now = System.nanoTime();
+			if (rate <= 0) {
+				last = now;
+				return 0;
+			}
+			tokens = Math.min(rate, tokens + (now - last) * (double) rate / TimeUnit.SECONDS.toNanos(1));
+			last = now;
+			tokens -= bytes;
+			if (tokens >= 0)
+				return 0;
+			return (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+		}
+	}
+
+	/**
+	 * Smoothed transfer rate.
+	 */
+	static class RateMeter {
+		private long bytes = 0;
+		private long sampleTime = System.nanoTime();
+		private double rate = 0;
+
+		synchronized void add(int count) {
+			bytes += count;
+		}
+
+		synchronized double getRate() {
+			long now = System.nanoTime();
+			long elapsed = now - sampleTime;
+			if (elapsed >= TimeUnit.MILLISECONDS.toNanos(500)) {
+				double current = bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+				rate = rate == 0 ? current : 0.5 * rate + 0.5 * current;
+				bytes = 0;
+				sampleTime = now;
+			}
+			return rate;
+		}
+	}
+}
@@ -22,10 +22,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 import org.apache.hadoop.eclipse.Activator;
+import org.apache.hadoop.eclipse.hdfs.UploadOptions;
+import org.apache.hadoop.eclipse.internal.HadoopPreferences;
 import org.apache.log4j.Logger;
 import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -41,8 +49,11 @@ import org.eclipse.core.runtime.jobs.Job;
 public class UploadFileJob extends Job {
 
 	private final static Logger logger = Logger.getLogger(UploadFileJob.class);
+	private static final long DEFAULT_FAST_INGEST_THRESHOLD = 64 * 1024 * 1024;
+	private static final long DEFAULT_FAST_INGEST_BLOCK_SIZE = 256 * 1024 * 1024;
 	private final HDFSFileStore store;
 	private final IResource resource;
+	private long serverCallNanos = 0;
 
 	/**
 	 * @throws CoreException
@@ -71,27 +82,86 @@ public class UploadFileJob extends Job {
 				if (logger.isDebugEnabled())
 					logger.debug("[" + uri + "]: Uploading from " + (localFile == null ? "(null)" : localFile.toString()));
 				HDFSManager.INSTANCE.startServerOperation(uri.toString());
-				if (localFile != null && localFile.exists()) {
+				if (localFile != null && localFile.exists() && isOnServer(localFile)) {
+					if (logger.isDebugEnabled())
+						logger.debug("[" + uri + "]: Server file has the same content, skipping upload");
+					TransferJournal.getUploadJournalFile(localFile).delete();
+					store.clearLocalFileInfo();
+					File parentFolder = localFile.getParentFile();
+					localFile.delete();
+					deleteFoldersIfEmpty(parentFolder);
+				} else if (localFile != null && localFile.exists()) {
 					boolean uploaded = false;
-					monitor.beginTask("Uploading " + localFile.getAbsolutePath(), (int) localFile.length());
-					FileInputStream fis = new FileInputStream(localFile);
-					OutputStream fos = store.openRemoteOutputStream(EFS.NONE, new NullProgressMonitor());
+					long length = localFile.length();
+					int totalWork = (int) Math.min(Integer.MAX_VALUE, (length + 1023) / 1024);
+					monitor.beginTask("Uploading " + localFile.getAbsolutePath(), totalWork);
+					TransferJournal journal = new TransferJournal(TransferJournal.getUploadJournalFile(localFile), "upload " + length + " "
+							+ localFile.lastModified());
+					// Written next to the server file, which it replaces once
+					// complete, so that a partial upload is never taken for
+					// the server file
+					HDFSFileStore part = store.getUploadPartStore();
+					long written = getResumeOffset(journal, part, length);
+					boolean fastIngest = HadoopPreferences.getBoolean(HadoopPreferences.UPLOAD_FAST_INGEST, false)
+							&& length >= HadoopPreferences.getLong(HadoopPreferences.UPLOAD_FAST_INGEST_THRESHOLD, DEFAULT_FAST_INGEST_THRESHOLD);
+					FileChannel fis = new FileInputStream(localFile).getChannel();
+					OutputStream fos = null;
 					try {
-						if (!monitor.isCanceled()) {
-							byte[] data = new byte[8 * 1024];
-							int read = fis.read(data);
-							int totalRead = 0;
-							while (read > -1) {
-								if (monitor.isCanceled())
-									throw new InterruptedException();
-								fos.write(data, 0, read);
-								totalRead += read;
-								monitor.worked(read);
-								read = fis.read(data);
+						if (written > 0) {
+							try {
+								fos = part.openRemoteAppendStream(new NullProgressMonitor());
+								// Skips the uploaded part without reading it
+								fis.position(written);
 								if (logger.isDebugEnabled())
-									logger.debug("Uploaded " + totalRead + " out of " + localFile.length() + " [" + (((float)totalRead*100.0f) / (float)localFile.length())
-											+ "]");
+									logger.debug("[" + uri + "]: Resuming upload at " + written + " of " + length);
+							} catch (CoreException e) {
+								logger.debug("[" + uri + "]: Unable to resume upload. Starting over.", e);
+								written = 0;
+							}
+						}
+						if (fos == null) {
+							journal.reset();
+							long callStart = System.nanoTime();
+							fos = part.openRemoteOutputStream(fastIngest ? getFastIngestOptions() : new UploadOptions(), new NullProgressMonitor());
+							serverCallNanos += System.nanoTime() - callStart;
+						}
+						TransferThrottle throttle = new TransferThrottle(uri);
+						long rateShown = 0;
+						int reported = (int) (written / 1024);
+						monitor.worked(reported);
+						if (!monitor.isCanceled()) {
+							WritableByteChannel remote = Channels.newChannel(fos);
+							// Reads the local file while the server is written
+							ReadAheadChannel local = new ReadAheadChannel(fis, length - written);
+							try {
+								ByteBuffer buffer = local.take();
+								while (buffer != null) {
+									if (monitor.isCanceled())
+										throw new InterruptedException();
+									int read = buffer.remaining();
+									while (buffer.hasRemaining())
+										remote.write(buffer);
+									local.recycle(buffer);
+									written += read;
+									throttle.acquire(read);
+									int done = (int) Math.min(totalWork, written / 1024);
+									monitor.worked(done - reported);
+									reported = done;
+									if (System.currentTimeMillis() - rateShown >= 500) {
+										rateShown = System.currentTimeMillis();
+										monitor.subTask(TransferThrottle.formatRate(throttle.getRate()));
+									}
+									buffer = local.take();
+								}
+							} finally {
+								local.close();
 							}
+							OutputStream closing = fos;
+							fos = null;
+							long callStart = System.nanoTime();
+							closing.close();
+							store.replaceRemoteFile(part);
+							serverCallNanos += System.nanoTime() - callStart;
 							uploaded = true;
 						}
 					} catch (InterruptedException e) {
@@ -101,11 +171,27 @@ public class UploadFileJob extends Job {
 							fis.close();
 						} catch (Throwable t) {
 						}
-						try {
-							fos.close();
-						} catch (Throwable t) {
+						boolean resumable = false;
+						if (fos != null) {
+							try {
+								fos.close();
+								// The server has all written data. Resumes
+								// from here.
+								if (written > 0) {
+									journal.append(written);
+									resumable = true;
+								}
+							} catch (Throwable t) {
+							}
 						}
+						if (!uploaded && !resumable)
+							abortUpload(journal, part);
+						store.clearCreatedServerFileInfo();
+						store.clearLocalFileInfo();
 						if (uploaded) {
+							journal.delete();
+							if (fastIngest)
+								ReplicationQueue.INSTANCE.add(uri, (short) HadoopPreferences.getInt(HadoopPreferences.UPLOAD_TARGET_REPLICATION, 0));
 							// Delete parent folders if empty.
 							File parentFolder = localFile.getParentFile();
 							localFile.delete();
@@ -130,6 +216,70 @@ public class UploadFileJob extends Job {
 		return status;
 	}
 
+	/**
+	 * @return time spent creating, closing and renaming the server file by
+	 *         the last run, which unlike the whole run does not depend on the
+	 *         size of the file
+	 */
+	long getServerCallNanos() {
+		return serverCallNanos;
+	}
+
+	/**
+	 * Writes a single replica with larger blocks. The replication is raised
+	 * by the {@link ReplicationQueue} once written.
+	 */
+	private static UploadOptions getFastIngestOptions() {
+		UploadOptions options = new UploadOptions();
+		options.setReplication((short) 1);
+		options.setBlockSize(HadoopPreferences.getLong(HadoopPreferences.UPLOAD_FAST_INGEST_BLOCK_SIZE, DEFAULT_FAST_INGEST_BLOCK_SIZE));
+		return options;
+	}
+
+	/**
+	 * @return <code>true</code> when the server file already has the content
+	 *         of the local file
+	 */
+	private boolean isOnServer(File localFile) {
+		store.clearServerFileInfo();
+		return LocalChecksum.isSameContent(store, localFile);
+	}
+
+	/**
+	 * Deletes the part file of an upload which cannot be resumed.
+	 */
+	private void abortUpload(TransferJournal journal, HDFSFileStore part) {
+		journal.delete();
+		try {
+			part.clearServerFileInfo();
+			if (part.isRemoteFile())
+				part.deleteRemoteFile();
+		} catch (CoreException e) {
+			logger.warn("[" + part.toURI() + "]: Unable to delete partially uploaded file", e);
+		}
+	}
+
+	/**
+	 * Determines where an earlier, interrupted upload of the same local file
+	 * stopped. The upload is resumed only when the part file still has the
+	 * length recorded when it stopped.
+	 * 
+	 * @return number of bytes already uploaded, or 0 to start over
+	 */
+	private long getResumeOffset(TransferJournal journal, HDFSFileStore part, long length) throws CoreException {
+		List<Long> entries = journal.getEntries();
+		if (entries.isEmpty())
+			return 0;
+		long offset = entries.get(entries.size() - 1);
+		if (offset <= 0 || offset >= length)
+			return 0;
+		part.clearServerFileInfo();
+		IFileInfo serverInfo = part.fetchServerInfo();
+		if (serverInfo.exists() && !serverInfo.isDirectory() && serverInfo.getLength() == offset)
+			return offset;
+		return 0;
+	}
+
 	/**
 	 * Will attempt to delete the provided folder and its parents provided they
 	 * are empty.
@@ -19,9 +19,12 @@
 package org.apache.hadoop.eclipse.internal.zookeeper;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.hadoop.eclipse.internal.ServerCallExecutor;
 import org.apache.hadoop.eclipse.internal.model.ZNode;
 import org.apache.hadoop.eclipse.internal.model.ZooKeeperServer;
 import org.apache.hadoop.eclipse.zookeeper.ZooKeeperClient;
@@ -35,8 +38,6 @@ import org.apache.log4j.Logger;
 public class InterruptableZooKeeperClient extends ZooKeeperClient {
 	private static final int DEFAULT_TIMEOUT = 60000;
 	private static final Logger logger = Logger.getLogger(InterruptableZooKeeperClient.class);
-	// private static ExecutorService threadPool =
-	// Executors.newFixedThreadPool(10);
 
 	private final ZooKeeperClient client;
 	private final int timeoutMillis = DEFAULT_TIMEOUT;
@@ -56,49 +57,34 @@ public class InterruptableZooKeeperClient extends ZooKeeperClient {
 	}
 
 	protected <T> T executeWithTimeout(final CustomRunnable<T> runnable) throws IOException, InterruptedException {
-		final List<T> data = new ArrayList<T>();
-		final IOException[] ioE = new IOException[1];
-		final InterruptedException[] inE = new InterruptedException[1];
-		Thread runnerThread = new Thread(new Runnable() {
-			public void run() {
-				try {
-					data.add(runnable.run());
-				} catch (IOException e) {
-					ioE[0] = e;
-				} catch (InterruptedException e) {
-					inE[0] = e;
-				}
+		final ServerCallExecutor executor = ServerCallExecutor.INSTANCE;
+		Future<T> future = executor.submit(server.getUri(), new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return runnable.run();
 			}
 		});
-		boolean interrupted = false;
-		runnerThread.start();
-		runnerThread.join(timeoutMillis);
-		if (runnerThread.isAlive()) {
-			if (logger.isDebugEnabled())
-				logger.debug("executeWithTimeout(): Interrupting server call");
-			runnerThread.interrupt();
-			interrupted = true;
-		}
-		if (ioE[0] != null) {
+		try {
+			return executor.get(future, timeoutMillis);
+		} catch (IOException e) {
 			try {
 				if (!client.isConnected())
 					ZooKeeperManager.INSTANCE.disconnect(server);
 			} catch (Throwable t) {
 			}
-			throw ioE[0];
-		}
-		if (inE[0] != null)
-			throw inE[0];
-		if (interrupted) {
+			throw e;
+		} catch (TimeoutException e) {
 			// Tell HDFS manager that the server timed out
 			if (logger.isDebugEnabled())
 				logger.debug("executeWithTimeout(): Server timed out: " + server);
 			ZooKeeperManager.INSTANCE.disconnect(server);
 			throw new InterruptedException();
+		} catch (InterruptedException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("executeWithTimeout(): Interrupting server call");
+			future.cancel(true);
+			throw e;
 		}
-		if (data.size() > 0)
-			return data.get(0);
-		return null;
 	}
 
 	protected void connectIfNecessary() throws IOException, InterruptedException {
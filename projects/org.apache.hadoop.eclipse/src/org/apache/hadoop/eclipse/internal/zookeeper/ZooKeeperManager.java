@@ -19,8 +19,8 @@
 package org.apache.hadoop.eclipse.internal.zookeeper;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.eclipse.Activator;
 import org.apache.hadoop.eclipse.internal.HadoopManager;
@@ -43,7 +43,11 @@ import org.eclipse.emf.common.util.EList;
 public class ZooKeeperManager {
 	private static final Logger logger = Logger.getLogger(ZooKeeperManager.class);
 	public static ZooKeeperManager INSTANCE = new ZooKeeperManager();
-	private Map<String, ZooKeeperClient> clientsMap = new HashMap<String, ZooKeeperClient>();
+	private final ConcurrentMap<String, ZooKeeperClient> clientsMap = new ConcurrentHashMap<String, ZooKeeperClient>();
+	/**
+	 * Held while creating a client, so that each server gets one.
+	 */
+	private final Object clientLock = new Object();
 
 	private ZooKeeperManager() {
 	}
@@ -132,16 +136,22 @@ public class ZooKeeperManager {
 				logger.debug("getClient(" + server.getUri() + "): Server disconnected. Not returning client");
 			throw new CoreException(new Status(IStatus.WARNING, Activator.BUNDLE_ID, "Server disconnected. Please reconnect to server."));
 		}
-		if (clientsMap.containsKey(server.getUri()))
-			return clientsMap.get(server.getUri());
-		else {
+		ZooKeeperClient client = clientsMap.get(server.getUri());
+		if (client != null)
+			return client;
+		synchronized (clientLock) {
+			client = clientsMap.get(server.getUri());
+			if (client != null)
+				return client;
 			IConfigurationElement[] elementsFor = Platform.getExtensionRegistry().getConfigurationElementsFor("org.apache.hadoop.eclipse.zookeeperClient");
-			for (IConfigurationElement element : elementsFor) {
-				ZooKeeperClient client = (ZooKeeperClient) element.createExecutableExtension("class");
-				client.initialize(server.getUri());
-				clientsMap.put(server.getUri(), new InterruptableZooKeeperClient(server, client));
+			if (elementsFor.length > 0) {
+				// The last registered client is used
+				ZooKeeperClient created = (ZooKeeperClient) elementsFor[elementsFor.length - 1].createExecutableExtension("class");
+				created.initialize(server.getUri());
+				client = new InterruptableZooKeeperClient(server, created);
+				clientsMap.put(server.getUri(), client);
 			}
-			return clientsMap.get(server.getUri());
+			return client;
 		}
 	}
 
@@ -155,8 +165,9 @@ public class ZooKeeperManager {
 				logger.debug("getClient(" + server.getUri() + "): Cannot delete a connected server.");
 			throw new CoreException(new Status(IStatus.WARNING, Activator.BUNDLE_ID, "Cannot delete a connected server."));
 		}
-		if (clientsMap.containsKey(server.getUri()))
+		synchronized (clientLock) {
 			clientsMap.remove(server.getUri());
+		}
 		getServers().remove(server);
 	}
 }